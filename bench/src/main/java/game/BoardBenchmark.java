@@ -0,0 +1,85 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Board operations that search calls at every node, and the leaf
+ *  evaluation built on them. Run with -prof gc to
+ *  see allocation per operation alongside throughput. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BoardBenchmark {
+
+    /** Position to start from; see Positions.*/
+    @Param({Positions.EMPTY, Positions.MIDGAME, Positions.NEAR_TERMINAL, Positions.LARGE})
+    public String position;
+
+    /** Board in POSITION.*/
+    private Board board;
+
+    /** Move buffer for the int move generator.*/
+    private int[] moves;
+
+    /** A legal move in POSITION.*/
+    private int move;
+
+    @Setup
+    public void setUp() {
+        board = Positions.of(position);
+        moves = Search.moveStack(board);
+        board.legalMoves(moves, 0);
+        move = moves[0];
+    }
+
+    @Benchmark
+    public boolean isGameOver() {
+        return board.isGameOver();
+    }
+
+    @Benchmark
+    public Object legalMoves() {
+        return board.legalMoves();
+    }
+
+    @Benchmark
+    public int legalMovesIntoBuffer(Blackhole hole) {
+        int count = board.legalMoves(moves, 0);
+        hole.consume(moves);
+        return count;
+    }
+
+    @Benchmark
+    public Board copyBoard() {
+        return Board.copyBoard(board);
+    }
+
+    @Benchmark
+    public int evaluate() {
+        return Evaluator.evaluate(board);
+    }
+
+    /** makeMove followed by unmakeMove, leaving the board as it was.*/
+    @Benchmark
+    public boolean makeUnmakeMove() {
+        board.makeMove(move);
+        boolean over = board.isGameOver();
+        board.unmakeMove();
+        return over;
+    }
+}
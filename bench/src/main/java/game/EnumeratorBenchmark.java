@@ -0,0 +1,55 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Whole 3x3 game-tree enumerations, which exercise makeMove, unmakeMove,
+ *  legalMoves and the symmetries on every one of its 5,478 positions. The
+ *  count is checked, so a board change that is fast but wrong fails here
+ *  instead of posting a good number. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class EnumeratorBenchmark {
+
+    /** Worker threads.*/
+    @Param({"1", "4"})
+    public int threads;
+
+    /** Enumerator for 3x3.*/
+    private Enumerator enumerator;
+
+    @Setup
+    public void setUp() {
+        enumerator = new Enumerator(3, 3, 3, threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        enumerator.close();
+    }
+
+    @Benchmark
+    public long enumerate() {
+        long games = enumerator.run().games();
+        if (games != 255168) {
+            throw new IllegalStateException("Counted " + games + " games on 3x3, not 255168.");
+        }
+        return games;
+    }
+}
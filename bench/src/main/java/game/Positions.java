@@ -0,0 +1,41 @@
+package game;
+
+/** The fixed positions the benchmarks run from, so numbers taken before
+ *  and after an engine change are comparable. */
+final class Positions {
+
+    /** Names accepted by of().*/
+    static final String EMPTY = "empty", MIDGAME = "midgame", NEAR_TERMINAL = "nearTerminal",
+        LARGE = "large";
+
+    /** Returns a fresh board in the named position.
+     *  empty: the 3x3 start position.
+     *  midgame: 3x3 after four moves, X to move and facing a threat.
+     *  nearTerminal: 3x3 with two squares left, O to move.
+     *  large: 5x5, four in a row, after eight moves.*/
+    static Board of(String name) {
+        switch (name) {
+        case EMPTY:
+            return new Board();
+        case MIDGAME:
+            return play(new Board(), "2,2", "1,1", "3,2", "1,2");
+        case NEAR_TERMINAL:
+            return play(new Board(), "2,2", "1,1", "3,3", "1,3", "1,2", "3,2", "2,1");
+        case LARGE:
+            return play(new Board(5, 5, 4), "3,3", "2,2", "3,2", "3,4", "2,3", "4,4", "4,2", "1,3");
+        default:
+            throw new IllegalArgumentException("Unknown position " + name);
+        }
+    }
+
+    /** Plays MOVES on BOARD and returns it.*/
+    private static Board play(Board board, String... moves) {
+        for (String move : moves) {
+            board.makeMove(move);
+        }
+        return board;
+    }
+
+    private Positions() {
+    }
+}
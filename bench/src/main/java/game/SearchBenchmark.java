@@ -0,0 +1,57 @@
+package game;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Whole Engine.bestMove searches. Each search
+ *  starts from an empty transposition table, so every operation does the
+ *  same work; clearing the table is included in the time. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Thread)
+public class SearchBenchmark {
+
+    /** Position to start from; see Positions.*/
+    @Param({Positions.EMPTY, Positions.MIDGAME, Positions.NEAR_TERMINAL, Positions.LARGE})
+    public String position;
+
+    /** Search depth. 1 is what the interactive game uses.*/
+    @Param({"1", "4"})
+    public int depth;
+
+    /** Board in POSITION.*/
+    private Board board;
+
+    /** How far to search.*/
+    private SearchLimits limits;
+
+    /** Engine whose table is cleared before every search.*/
+    private Engine engine;
+
+    @Setup
+    public void setUp() {
+        board = Positions.of(position);
+        limits = SearchLimits.depth(depth);
+        engine = new Engine();
+    }
+
+    @Benchmark
+    public int bestMove() {
+        engine.newGame();
+        return engine.bestMove(board, limits).square();
+    }
+}
@@ -0,0 +1,307 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static game.Piece.*;
+
+/** Scores batches of positions, for analysis, training data or checking
+ *  recorded games, on a pool of worker threads. Each position gets its
+ *  alpha-beta score, with X maximising, and its best move, and results come
+ *  back in the order the positions went in.
+ *
+ *  A position is written as a line of text: the rows, columns and number
+ *  in a row of the board, then the moves played on it, as typed in a game.
+ *  "3 3 3" is the empty 3x3 board and "4 4 3 2,2 1,1" a 4x4 one after two
+ *  moves. Blank lines and lines starting with # are skipped when reading a
+ *  file. A position that cannot be read, or has illegal moves, gets a
+ *  Result with an error instead of stopping the batch.
+ *
+ *  All workers share one OffHeapTable, so a subposition searched for one
+ *  position is not searched again for another, by the same worker or any
+ *  other, and a position that turns up twice is answered from the table
+ *  the second time. Positions on boards of different shapes may share a
+ *  batch and the table. Each worker has its own Search, so throughput
+ *  grows with the number of threads. */
+public final class BatchEvaluator implements Closeable {
+
+    /** The score and best move of one position, or why it has none.*/
+    public static final class Result {
+
+        private Result(String position, int score, int move, String moveName, long nodes) {
+            this(position, score, move, moveName, nodes, null);
+        }
+
+        /** The result of POSITION, which could not be read because of ERROR.*/
+        private Result(String position, String error) {
+            this(position, 0, -1, null, 0, error);
+        }
+
+        private Result(String position, int score, int move, String moveName, long nodes, String error) {
+            _position = position;
+            _score = score;
+            _move = move;
+            _moveName = moveName;
+            _nodes = nodes;
+            _error = error;
+        }
+
+        /** The position, as given.*/
+        public String position() {
+            return _position;
+        }
+
+        /** Score of the position; higher is better for X.*/
+        public int score() {
+            return _score;
+        }
+
+        /** Best move, a square numbered as in Board, or -1 if the game is over.*/
+        public int move() {
+            return _move;
+        }
+
+        /** Best move as typed in a game, e.g. "2,3", or null if the game is over.*/
+        public String moveName() {
+            return _moveName;
+        }
+
+        /** Nodes searched for this position; 0 if it was found in the table.*/
+        public long nodes() {
+            return _nodes;
+        }
+
+        /** Why the position could not be evaluated, or null if it was.*/
+        public String error() {
+            return _error;
+        }
+
+        @Override
+        public String toString() {
+            if (_error != null) {
+                return _position + "\t-\terror " + _error;
+            }
+            return _position + "\t" + _score + "\t" + ((_moveName == null) ? "-" : _moveName);
+        }
+
+        /** See the accessors.*/
+        private final String _position, _moveName, _error;
+        private final int _score, _move;
+        private final long _nodes;
+    }
+
+    /** Creates an evaluator searching every position DEPTH plies deep on
+     *  THREADS threads, sharing a table of MEGABYTES outside the heap.*/
+    public BatchEvaluator(int depth, int threads, long megabytes) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Search depth must be at least 1.");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one thread.");
+        }
+        TranspositionTable table = new OffHeapTable(megabytes);
+        _depth = depth;
+        _table = table;
+        _pool = new ForkJoinPool(threads);
+        _searches = ThreadLocal.withInitial(() -> new Search(table));
+    }
+
+    /** Evaluates POSITIONS and returns their results in the same order.*/
+    public List<Result> evaluate(List<String> positions) {
+        Result[] results = evaluate(positions.toArray(new String[0]));
+        return Arrays.asList(results);
+    }
+
+    /** Evaluates POSITIONS and returns their results in the same order.*/
+    public Result[] evaluate(String[] positions) {
+        Result[] results = new Result[positions.length];
+        _pool.invoke(new Batch(positions, results, 0, positions.length));
+        return results;
+    }
+
+    /** Evaluates POSITIONS, which may be far too many to hold at once,
+     *  CHUNK at a time, handing each result to OUT in order.*/
+    public void evaluate(Stream<String> positions, Consumer<Result> out) {
+        Iterator<String> in = positions.iterator();
+        List<String> chunk = new ArrayList<>(CHUNK);
+        while (in.hasNext()) {
+            chunk.add(in.next());
+            if (chunk.size() == CHUNK || !in.hasNext()) {
+                for (Result result : evaluate(chunk.toArray(new String[0]))) {
+                    out.accept(result);
+                }
+                chunk.clear();
+            }
+        }
+    }
+
+    /** Evaluates the positions in FILE, one a line, and appends a line to
+     *  OUT for each in order: the position, its score and its best move
+     *  (or - if the game is over), separated by tabs. For a position that
+     *  cannot be evaluated, the score is - and the move column gives the
+     *  error and the number of its line in FILE.*/
+    public void evaluate(Path file, Appendable out) throws IOException {
+        Deque<Integer> numbers = new ArrayDeque<>();
+        int[] number = new int[1];
+        try (BufferedReader in = Files.newBufferedReader(file);
+             Stream<String> lines = in.lines()) {
+            evaluate(lines.map(line -> {
+                        number[0] += 1;
+                        return line.trim();
+                    }).filter(line -> {
+                        boolean position = !line.isEmpty() && !line.startsWith("#");
+                        if (position) {
+                            numbers.add(number[0]);
+                        }
+                        return position;
+                    }),
+                     result -> {
+                         int line = numbers.remove();
+                         try {
+                             if (result.error() != null) {
+                                 out.append(result.position()).append("\t-\terror line ").append(String.valueOf(line))
+                                     .append(": ").append(result.error()).append('\n');
+                             } else {
+                                 out.append(result.toString()).append('\n');
+                             }
+                         } catch (IOException error) {
+                             throw new UncheckedIOException(error);
+                         }
+                     });
+        } catch (UncheckedIOException error) {
+            throw error.getCause();
+        }
+    }
+
+    /** Stops the worker threads.*/
+    @Override
+    public void close() {
+        _pool.shutdown();
+    }
+
+    /** Evaluates positions [LO, HI) of a batch, splitting the range in half
+     *  until it is small enough for one worker.*/
+    private final class Batch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        Batch(String[] positions, Result[] results, int lo, int hi) {
+            _positions = positions;
+            _results = results;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > GRAIN) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Batch(_positions, _results, _lo, mid), new Batch(_positions, _results, mid, _hi));
+                return;
+            }
+            Search search = _searches.get();
+            for (int n = _lo; n < _hi; n += 1) {
+                _results[n] = evaluate(search, _positions[n]);
+            }
+        }
+
+        /** Positions and where their results go.*/
+        private final String[] _positions;
+        private final Result[] _results;
+
+        /** Range of positions this task evaluates.*/
+        private final int _lo, _hi;
+    }
+
+    /** Evaluates POSITION with SEARCH.*/
+    private Result evaluate(Search search, String position) {
+        Board board;
+        try {
+            board = parse(position);
+        } catch (IllegalArgumentException error) {
+            Throwable reason = (error.getCause() == null) ? error : error.getCause();
+            return new Result(position, reason.getMessage());
+        }
+        if (board.isGameOver()) {
+            return new Result(position, Evaluator.evaluate(board), -1, null, 0);
+        }
+        int symmetry = board.canonicalSymmetry();
+        long entry = _table.probe(board.hash(symmetry));
+        if (known(entry)) {
+            int move = board.untransform(symmetry, TranspositionTable.move(entry));
+            return new Result(position, TranspositionTable.score(entry), move, board.moveName(move), 0);
+        }
+        SearchResult result = new SearchResult(board.getCurrPlayer() != O);
+        search.run(board, _depth, Integer.MIN_VALUE, Integer.MAX_VALUE, result);
+        return new Result(position, result.score(), result.move(), board.moveName(result.move()), result.nodes());
+    }
+
+    /** True if ENTRY, from the root of an earlier search, holds a best move
+     *  and an exact score from at least _depth plies deep. A full-window
+     *  search stores a proven loss as an upper bound and a proven win as a
+     *  lower bound, which are just as exact.*/
+    private boolean known(long entry) {
+        if (entry == TranspositionTable.MISS || TranspositionTable.depth(entry) < _depth
+            || TranspositionTable.move(entry) == TranspositionTable.NO_MOVE) {
+            return false;
+        }
+        int score = TranspositionTable.score(entry);
+        byte bound = TranspositionTable.bound(entry);
+        return bound == TranspositionTable.EXACT
+            || (bound == TranspositionTable.UPPER && score == Integer.MIN_VALUE)
+            || (bound == TranspositionTable.LOWER && score == Integer.MAX_VALUE);
+    }
+
+    /** Returns the board POSITION describes; see the class comment.*/
+    static Board parse(String position) {
+        String[] words = position.trim().split("\\s+");
+        try {
+            if (words.length < 3) {
+                throw new IllegalArgumentException("need rows, columns and k");
+            }
+            Board board = new Board(Integer.parseInt(words[0]), Integer.parseInt(words[1]),
+                                    Integer.parseInt(words[2]));
+            for (int n = 3; n < words.length; n += 1) {
+                if (board.isGameOver()) {
+                    throw new IllegalArgumentException("moves after the end of the game");
+                }
+                board.makeMove(words[n]);
+            }
+            return board;
+        } catch (IllegalArgumentException error) {
+            throw new IllegalArgumentException("Bad position '" + position + "': " + error.getMessage(), error);
+        }
+    }
+
+    /** Positions one task evaluates without splitting.*/
+    private static final int GRAIN = 8;
+
+    /** Positions read from a stream at a time.*/
+    private static final int CHUNK = 1 << 14;
+
+    /** Search depth.*/
+    private final int _depth;
+
+    /** Table every worker shares.*/
+    private final TranspositionTable _table;
+
+    /** Worker threads.*/
+    private final ForkJoinPool _pool;
+
+    /** One search per worker thread, since Search is not thread-safe.*/
+    private final ThreadLocal<Search> _searches;
+}
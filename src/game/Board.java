@@ -3,30 +3,25 @@ package game;
 import java.util.ArrayList;
 import java.util.List;
 
-import static game.Utils.*;
 import static game.Piece.*;
 
 public class Board {
 
-    /**Default 3x3 board in case no initial configuration provided.*/
-    private static Piece[][] standard = {{EMP, EMP, EMP}, {EMP, EMP, EMP}, {EMP, EMP, EMP}};
+    /** Precomputed winning lines for this board's shape.*/
+    private Lines _lines;
 
-    /**Returns a standard n x n board.*/
-    private static Piece[][] createStandard(int n) {
-        Piece[][] board = new Piece[n][n];
-        for (int col = 0; col < board.length; col += 1) {
-            for (int row = 0; row < board[0].length; row += 1) {
-                board[col][row] = EMP;
-            }
-        }
-        return board;
-    }
+    /** One bitboard per player, indexed by Piece ordinal (O, X). See Lines
+     *  for how squares map to bits.*/
+    private long[][] _bits;
 
-    /** 2D array representing board. Indexed as follows - _board[column][row]*/
-    private Piece[][] _board;
+    /** Number of rows on the board.*/
+    private int rows;
 
-    /** Integer length/breadth of the board.*/
-    private int size;
+    /** Number of columns on the board.*/
+    private int cols;
+
+    /** Number in a row needed to win.*/
+    private int k;
 
     /**Is the board in a tie situation.*/
     private boolean tie = false;
@@ -37,75 +32,208 @@ public class Board {
     /**Winner of the game.*/
     private Piece winner;
 
+    /**Squares played so far through makeMove, oldest first. unmakeMove pops from here.*/
+    private int[] _history;
+
+    /**Number of moves on the history stack.*/
+    private int _ply;
+
+    /**Number of occupied squares, including any from the initial configuration.*/
+    private int _filled;
+
+    /**Zobrist hash of the pieces as seen through each symmetry of the board,
+     * updated incrementally by makeMove and unmakeMove.*/
+    private long[] _hashes;
+
+    /**_counts[player][l] is the number of PLAYER pieces (by Piece ordinal)
+     * on line l, updated incrementally by makeMove and unmakeMove.*/
+    private int[][] _counts;
+
+    /**_open[player][j] is the number of lines holding exactly j of PLAYER's
+     * pieces and none of the opponent's, for j from 0 to k; _open[X][0] and
+     * _open[O][0] both count the empty lines.*/
+    private int[][] _open;
+
+    /**_missing[player][i] is the number of open lines holding k - 1 of
+     * PLAYER's pieces whose one empty square is i, and _completions[player]
+     * the number of squares with a nonzero count: the distinct squares that
+     * would complete a line for PLAYER. Both are updated incrementally by
+     * makeMove and unmakeMove.*/
+    private int[][] _missing;
+    private int[] _completions;
+
+    /**On a sparse board (see Lines), _near[i] is the number of pieces within
+     * Lines.RADIUS rows and columns of square i, and _candidates is the
+     * bitboard of empty squares with a piece that near; both are updated
+     * incrementally by makeMove and unmakeMove. Null on other boards.*/
+    private int[] _near;
+    private long[] _candidates;
+
     /**Initializes a board.*/
-    private void initialize(int size, Piece[][] initConfig) {
-        if (initConfig == null) {
-            _board = createStandard(size);
+    private void initialize(int rows, int cols, int k, Piece[][] initConfig) {
+        this.rows = rows;
+        this.cols = cols;
+        this.k = k;
+        _lines = Lines.forShape(rows, cols, k);
+        _bits = new long[2][_lines.words];
+        _hashes = new long[_lines.symmetries];
+        _counts = new int[2][_lines.count];
+        _open = new int[2][k + 1];
+        _open[X.ordinal()][0] = _lines.count;
+        _open[O.ordinal()][0] = _lines.count;
+        _missing = new int[2][_lines.cells];
+        _completions = new int[2];
+        if (k == 1) {
+            for (int i = 0; i < _lines.cells; i += 1) {
+                _missing[X.ordinal()][i] = _lines.through(i).length;
+                _missing[O.ordinal()][i] = _lines.through(i).length;
+            }
+            _completions[X.ordinal()] = _lines.cells;
+            _completions[O.ordinal()] = _lines.cells;
         }
-        else {
-            _board = initConfig;
+        if (_lines.sparse) {
+            _near = new int[_lines.cells];
+            _candidates = new long[_lines.words];
         }
-        this.size = size;
+        if (initConfig != null) {
+            for (int col = 0; col < cols; col += 1) {
+                for (int row = 0; row < rows; row += 1) {
+                    if (initConfig[col][row] != EMP) {
+                        int player = initConfig[col][row].ordinal();
+                        int i = _lines.index(col, row);
+                        Lines.set(_bits[player], i);
+                        toggleHashes(player, i);
+                        countLines(player, i, 1);
+                        if (_near != null) {
+                            touchNeighbours(i, 1);
+                        }
+                    }
+                }
+            }
+        }
+        _history = new int[_lines.cells];
+        _ply = 0;
+        _filled = Lines.popCount(_bits[X.ordinal()]) + Lines.popCount(_bits[O.ordinal()]);
         currPlayer = X;
+        if (_lines.completes(_bits[X.ordinal()])) {
+            winner = X;
+        } else if (_lines.completes(_bits[O.ordinal()])) {
+            winner = O;
+        } else {
+            tie = _filled == _lines.cells;
+        }
     }
 
     /**Board copy constructor. Doesn't actually make a copy.*/
     public Board Board(Board board) {
-        return new Board(board.size, board._board);
+        return new Board(board.rows, board.cols, board.k, board.getBoard());
     }
 
     /**Board copy constructor proper.*/
     public static Board copyBoard(Board board) {
-        Board result = new Board();
-        for (int col = 0; col < result._board.length; col++) {
-            for (int row = 0; row < result._board.length; row++) {
-                result._board[col][row] = board._board[col][row];
-            }
+        Board result = new Board(board.rows, board.cols, board.k);
+        for (int player = 0; player < 2; player += 1) {
+            System.arraycopy(board._bits[player], 0, result._bits[player], 0, board._lines.words);
+        }
+        System.arraycopy(board._history, 0, result._history, 0, board._ply);
+        result._ply = board._ply;
+        result._filled = board._filled;
+        System.arraycopy(board._hashes, 0, result._hashes, 0, board._hashes.length);
+        for (int player = 0; player < 2; player += 1) {
+            System.arraycopy(board._counts[player], 0, result._counts[player], 0, board._lines.count);
+            System.arraycopy(board._open[player], 0, result._open[player], 0, board.k + 1);
+            System.arraycopy(board._missing[player], 0, result._missing[player], 0, board._lines.cells);
+        }
+        result._completions[X.ordinal()] = board._completions[X.ordinal()];
+        result._completions[O.ordinal()] = board._completions[O.ordinal()];
+        if (board._near != null) {
+            System.arraycopy(board._near, 0, result._near, 0, board._near.length);
+            System.arraycopy(board._candidates, 0, result._candidates, 0, board._candidates.length);
         }
         result.winner = board.winner;
         result.tie = board.tie;
-        result.size = board.size;
         result.currPlayer = board.currPlayer;
         return result;
     }
 
     /**Constructs a board which is in state given by initConfig.*/
     public Board(int size, Piece[][] initConfig) {
-        initialize(size, initConfig);
+        initialize(size, size, size, initConfig);
+    }
+
+    /**Constructs a rows x cols board needing k in a row to win, in the
+     * state given by initConfig (indexed [column][row]).*/
+    public Board(int rows, int cols, int k, Piece[][] initConfig) {
+        initialize(rows, cols, k, initConfig);
+    }
+
+    /**Constructs an empty rows x cols board needing k in a row to win.*/
+    public Board(int rows, int cols, int k) {
+        initialize(rows, cols, k, null);
     }
 
     /**Constructs an empty new size x size board. All the squares will contain EMP by default.*/
     public Board(int size) {
-        initialize(size, null);
+        initialize(size, size, size, null);
     }
 
     /**Constructs an empty 3x3 board.*/
     public Board() {
-        initialize(3, null);
+        initialize(3, 3, 3, null);
+    }
+
+    /**Returns the number of rows.*/
+    public int rows() {
+        return rows;
+    }
+
+    /**Returns the number of columns.*/
+    public int cols() {
+        return cols;
+    }
+
+    /**Returns the number in a row needed to win.*/
+    public int k() {
+        return k;
+    }
+
+    /**Returns the number of squares on the board.*/
+    public int cells() {
+        return _lines.cells;
+    }
+
+    /**Returns PLAYER's pieces as a bitmask over squares 0-63. Only meaningful
+     * on boards with at most 64 squares.*/
+    long bitboard(Piece player) {
+        return _bits[player.ordinal()][0];
+    }
+
+    /**Returns the piece on the given square.*/
+    public Piece get(int col, int row) {
+        int i = _lines.index(col, row);
+        if (Lines.test(_bits[X.ordinal()], i)) {
+            return X;
+        }
+        if (Lines.test(_bits[O.ordinal()], i)) {
+            return O;
+        }
+        return EMP;
     }
 
     /** Prints out the board in its current state */
     public void displayBoard() {
-        newLine();
-        for (int row = _board[0].length - 1; row >= 0; row -= 1) {
-            String pair = new String();
-            for (int col = 0; col < _board.length; col += 1) {
-                pair += "|";
-                pair += _board[col][row].abbrev();
-            }
-            System.out.println(pair + "|");
-            newLine();
-        }
+        TextRenderer.CONSOLE.render(this);
     }
 
     /**Returns true if the move is legal. Move will be of the form "2,3".*/
     private boolean isLegal(String move) {
-        if (!move.matches("[0-9]*,[0-9]*")) {
+        if (!move.matches("[0-9]{1,4},[0-9]{1,4}")) {
             return false;
         }
 
-        int column = Integer.parseInt(move.substring(2)) - 1;
-        int row = Integer.parseInt(move.substring(0, 1)) - 1;
+        int comma = move.indexOf(',');
+        int row = Integer.parseInt(move.substring(0, comma)) - 1;
+        int column = Integer.parseInt(move.substring(comma + 1)) - 1;
 
         if (beyondBoard(column, row)) {
             return false;
@@ -120,15 +248,17 @@ public class Board {
 
     /**Returns whether or not the specified square has already been filled in.*/
     private boolean isOccupied(int col, int row) {
-        if (_board[col][row] != EMP) {
-            return true;
-        }
-        return false;
+        return isOccupied(_lines.index(col, row));
+    }
+
+    /**Returns whether or not square i has already been filled in.*/
+    boolean isOccupied(int i) {
+        return Lines.test(_bits[X.ordinal()], i) || Lines.test(_bits[O.ordinal()], i);
     }
 
     /**Returns true if either of the coordinates of the doesn't fit on the board.*/
     private boolean beyondBoard(int col, int row) {
-        if (col >= size || row >= size || col <= -1 || row <= -1) {
+        if (col >= cols || row >= rows || col <= -1 || row <= -1) {
             return true;
         }
         return false;
@@ -139,94 +269,265 @@ public class Board {
         if (!isLegal(move)) {
             throw new IllegalArgumentException("This is an illegal move.");
         }
-        int column = Integer.parseInt(move.substring(2)) - 1;
-        int row = Integer.parseInt(move.substring(0, 1)) - 1;
-        _board[column][row] = currPlayer;
-        alternatePlayer(currPlayer);
+        play(square(move));
     }
 
-    /**Alternates the value of currPlayer.*/
-    private void alternatePlayer(Piece current) {
-        if (currPlayer == X) {
-            currPlayer = O;
+    /**Makes the move on square i. Moves are packed as square numbers,
+     * col * rows + row; this is the form search and the move generator use,
+     * and it involves no parsing.*/
+    void makeMove(int i) {
+        if (i < 0 || i >= _lines.cells || isOccupied(i)) {
+            throw new IllegalArgumentException("This is an illegal move.");
         }
-        else currPlayer = X;
+        play(i);
     }
 
-    /**Returns true if this is a winning line of pieces*/
-    private boolean isWinning(Piece[] arr) {
-        if (arr[0] == X) {
-            for (Piece piece : arr) {
-                if (piece != X) {
-                    return false;
-                }
-            }
+    /**Returns the square number of a move of the form "2,3". Does not check legality.*/
+    int square(String move) {
+        int comma = move.indexOf(',');
+        int row = Integer.parseInt(move.substring(0, comma)) - 1;
+        int column = Integer.parseInt(move.substring(comma + 1)) - 1;
+        return _lines.index(column, row);
+    }
+
+    /**Returns the square at ROW and COL, counted from 1 as in a move like
+     * "2,3", or -1 if that is off the board.*/
+    int square(int row, int col) {
+        if (row < 1 || col < 1 || row > rows || col > cols) {
+            return -1;
         }
-        else {
-            for (Piece piece : arr) {
-                if (piece != O) {
-                    return false;
-                }
+        return _lines.index(col - 1, row - 1);
+    }
+
+    /**Returns the move, of the form "2,3", that plays on square i.*/
+    String moveName(int i) {
+        return (i % rows + 1) + "," + (i / rows + 1);
+    }
+
+    /**Places currPlayer's piece on square i, pushes it on the history stack
+     * and updates winner/tie from the lines through i only.*/
+    private void play(int i) {
+        long[] mine = _bits[currPlayer.ordinal()];
+        Lines.set(mine, i);
+        toggleHashes(currPlayer.ordinal(), i);
+        countLines(currPlayer.ordinal(), i, 1);
+        if (_near != null) {
+            touchNeighbours(i, 1);
+        }
+        _history[_ply++] = i;
+        _filled += 1;
+        if (winner == null && !tie) {
+            if (_lines.completesThrough(mine, i)) {
+                winner = currPlayer;
+            } else if (_filled == _lines.cells) {
+                tie = true;
             }
         }
-        return true;
+        alternatePlayer(currPlayer);
     }
 
-    /**Destructively tranposes THIS board.*/
-    private void transpose() {
-        Utils.transpose(this._board);
+    /**Takes back the last move made with makeMove, restoring the player to
+     * move and the winner/tie state from before it. Allocates nothing, so
+     * search can walk the tree on a single board.*/
+    void unmakeMove() {
+        if (_ply == 0) {
+            throw new IllegalStateException("There is no move to take back.");
+        }
+        int i = _history[--_ply];
+        alternatePlayer(currPlayer);
+        Lines.clear(_bits[currPlayer.ordinal()], i);
+        toggleHashes(currPlayer.ordinal(), i);
+        countLines(currPlayer.ordinal(), i, -1);
+        if (_near != null) {
+            touchNeighbours(i, -1);
+        }
+        _filled -= 1;
+        if (winner == currPlayer && !_lines.completes(_bits[currPlayer.ordinal()])) {
+            winner = null;
+        }
+        tie = false;
     }
 
-    /**Returns the diagonals in a 2D array.*/
-    public Piece[][] getDiag() {
-        Piece[][] result = new Piece[2][3];
-        for (int i = 0; i < this.size; i++) {
-            result[0][i] = _board[i][i];
+    /**XORs a PLAYER piece on square i into or out of every symmetric hash.*/
+    private void toggleHashes(int player, int i) {
+        for (int s = 0; s < _hashes.length; s += 1) {
+            _hashes[s] ^= _lines.zobrist(player, _lines.transform(s, i));
         }
-        for (int j = 0; j < this.size; j++) {
-            result[1][j] = _board[j][size - 1 - j];
-        }
-        return result;
     }
 
-    /**Returns true if the game is over. To do this, you just need
-     * to check if there is a complete line along n^2 + 2 possible
-     * lines - the two diagonals, n horizontals, and n verticals*/
-    public boolean isGameOver() {
-        if (winner == null) {
-            Piece[] diagOne = new Piece[this.size];
-            Piece[] diagTwo = new Piece[this.size];
-            for (int col = 0; col < _board.length; col += 1) {
-                diagOne[col] = _board[col][col];
-                diagTwo[col] = _board[col][this.size - 1 - col];
-                if (isWinning(_board[col])) {
-                    alternatePlayer(currPlayer);
-                    winner = currPlayer;
-                    return true;
+    /**Adds DELTA (1 or -1) PLAYER pieces on square i to the counts of the
+     * lines through i, moving each line between the _open buckets, and
+     * updates _missing for each line that starts or stops being one piece
+     * short for either player. A line the opponent also has pieces on is
+     * dead and in no bucket. The bit for i must already be set or cleared.*/
+    private void countLines(int player, int i, int delta) {
+        int[] mine = _counts[player];
+        int[] theirs = _counts[1 - player];
+        int[] myOpen = _open[player];
+        int[] theirOpen = _open[1 - player];
+        for (int l : _lines.through(i)) {
+            int before = mine[l];
+            int after = before + delta;
+            mine[l] = after;
+            int other = theirs[l];
+            if (other == 0) {
+                myOpen[before] -= 1;
+                myOpen[after] += 1;
+                if (before == 0) {
+                    theirOpen[0] -= 1;
+                } else if (after == 0) {
+                    theirOpen[0] += 1;
                 }
+            } else if (before == 0) {
+                theirOpen[other] -= 1;
+            } else if (after == 0) {
+                theirOpen[other] += 1;
             }
-            this.transpose();
-            for (int row = 0; row < _board[0].length; row += 1) {
-                if (isWinning(this._board[row])) {
-                    this.transpose();
-                    alternatePlayer(currPlayer);
-                    winner = currPlayer;
-                    return true;
-                }
+            if (other == 0 && (before == k - 1 || after == k - 1)) {
+                boolean atI = (delta > 0) ? before == k - 1 : after == k - 1;
+                int square = atI ? i : emptySquare(l, i);
+                countMissing(player, square, (after == k - 1) ? 1 : -1);
+            }
+            if (other == k - 1 && (before == 0 || after == 0)) {
+                countMissing(1 - player, i, (after == 0) ? 1 : -1);
             }
+        }
+    }
 
-            this.transpose();
+    /**Returns the empty square of line l other than i.*/
+    private int emptySquare(int l, int i) {
+        for (int j : _lines.squares(l)) {
+            if (j != i && !isOccupied(j)) {
+                return j;
+            }
+        }
+        throw new IllegalStateException("Line " + l + " has no empty square but " + i + ".");
+    }
 
-            if (isWinning(diagOne) || isWinning(diagTwo)) {
-                alternatePlayer(currPlayer);
-                winner = currPlayer;
-                return true;
+    /**Adds DELTA (1 or -1) to the number of PLAYER's lines one piece short
+     * whose empty square is i, keeping _completions up to date.*/
+    private void countMissing(int player, int i, int delta) {
+        int[] missing = _missing[player];
+        if (missing[i] == 0) {
+            _completions[player] += 1;
+        }
+        missing[i] += delta;
+        if (missing[i] == 0) {
+            _completions[player] -= 1;
+        }
+    }
+
+    /**Adds DELTA (1 when a piece lands on square i, -1 when it is taken
+     * back, after its bit is cleared) to the _near counts around i, and
+     * updates _candidates for i and the squares around it.*/
+    private void touchNeighbours(int i, int delta) {
+        for (int j : _lines.neighbours(i)) {
+            _near[j] += delta;
+            if (_near[j] == 0) {
+                Lines.clear(_candidates, j);
+            } else if (!isOccupied(j)) {
+                Lines.set(_candidates, j);
             }
-            if (checkTie()) {
-                return true;
+        }
+        if (delta > 0 || _near[i] == 0) {
+            Lines.clear(_candidates, i);
+        } else {
+            Lines.set(_candidates, i);
+        }
+    }
+
+    /**Returns the number of PLAYER's pieces on line l of this board's Lines.*/
+    int lineCount(Piece player, int l) {
+        return _counts[player.ordinal()][l];
+    }
+
+    /**Returns the number of lines holding exactly J of PLAYER's pieces and
+     * none of the opponent's, for J from 0 (empty lines) to k. Kept up to
+     * date by every move, so this is an array read.*/
+    int openLines(Piece player, int j) {
+        return _open[player.ordinal()][j];
+    }
+
+    /**Returns how many distinct empty squares would complete a line for
+     * PLAYER. Two lines one piece short may both be missing the same
+     * square, which one move blocks. Kept up to date by every move, so
+     * this is an array read.*/
+    int completionSquares(Piece player) {
+        return _completions[player.ordinal()];
+    }
+
+    /**Returns the Zobrist hash of this position, including the player to move.*/
+    public long hash() {
+        return hash(0);
+    }
+
+    /**Returns the Zobrist hash of this position after applying symmetry s to it.*/
+    long hash(int s) {
+        return (currPlayer == O) ? _hashes[s] ^ Lines.SIDE : _hashes[s];
+    }
+
+    /**Returns the symmetry that maps this position to its canonical form, the
+     * one with the smallest hash. Rotations and reflections of a position all
+     * share the canonical hash, hash(canonicalSymmetry()).*/
+    int canonicalSymmetry() {
+        int best = 0;
+        for (int s = 1; s < _hashes.length; s += 1) {
+            if (_hashes[s] < _hashes[best]) {
+                best = s;
             }
         }
-        return false;
+        return best;
+    }
+
+    /**Returns the number of symmetries of the board, numbered from 0 (the
+     * identity): 8 if it is square, else 4.*/
+    int symmetries() {
+        return _hashes.length;
+    }
+
+    /**Returns the square that symmetry s sends square i to.*/
+    int transform(int s, int i) {
+        return _lines.transform(s, i);
+    }
+
+    /**Returns the square that symmetry s sends to square i.*/
+    int untransform(int s, int i) {
+        return _lines.untransform(s, i);
+    }
+
+    /**Returns the number of moves that can currently be taken back.*/
+    public int historySize() {
+        return _ply;
+    }
+
+    /**Alternates the value of currPlayer.*/
+    private void alternatePlayer(Piece current) {
+        if (currPlayer == X) {
+            currPlayer = O;
+        }
+        else currPlayer = X;
+    }
+
+    /**Returns the diagonals in a 2D array: the one rising from the bottom-left
+     * corner and the one falling from the top-left corner, each as long as
+     * the shorter side of the board.*/
+    public Piece[][] getDiag() {
+        int length = Math.min(rows, cols);
+        Piece[][] result = new Piece[2][length];
+        for (int i = 0; i < length; i++) {
+            result[0][i] = get(i, i);
+        }
+        for (int j = 0; j < length; j++) {
+            result[1][j] = get(j, rows - 1 - j);
+        }
+        return result;
+    }
+
+    /**Returns true if the game is over. Winner and tie are kept up to date
+     * by makeMove and unmakeMove, which only look at the lines through the
+     * square just played, so this is a field read.*/
+    public boolean isGameOver() {
+        return winner != null || tie;
     }
 
     /**Returns the winner.*/
@@ -242,15 +543,7 @@ public class Board {
     /**Returns true if the current state of the board is a tie*/
     public boolean checkTie() {
         if (winner == null) {
-            int counter = 0;
-            for (int col = 0; col < _board.length; col += 1) {
-                for (int row = 0; row < _board.length; row += 1) {
-                    if (_board[col][row] == EMP) {
-                        counter += 1;
-                    }
-                }
-            }
-            if (counter == 0) {
+            if (_filled == _lines.cells) {
                 tie = true;
                 return true;
             }
@@ -270,18 +563,58 @@ public class Board {
 
     /**Returns a list of legal moves.*/
     public List<String> legalMoves() {
-        List<String> result = new ArrayList<>();
-        for (int col = 1; col < _board.length + 1; col += 1) {
-            for (int row = 1; row < _board.length + 1; row += 1) {
-                String move = row + "," + col;
-                if (isLegal(move)) {
-                    result.add(move);
-                }
-            }
+        int[] squares = new int[_lines.cells];
+        int count = legalMoves(squares, 0);
+        List<String> result = new ArrayList<>(count);
+        for (int n = 0; n < count; n += 1) {
+            result.add(moveName(squares[n]));
         }
         return result;
     }
 
+    /**Writes the legal moves (empty squares, in increasing order) into
+     * BUFFER starting at START and returns how many there are. Walks the
+     * empty-square bitmask a word at a time and allocates nothing.*/
+    int legalMoves(int[] buffer, int start) {
+        int n = start;
+        long[] xs = _bits[X.ordinal()];
+        long[] os = _bits[O.ordinal()];
+        for (int w = 0; w < _lines.words; w += 1) {
+            long empty = ~(xs[w] | os[w]) & _lines.valid(w);
+            while (empty != 0) {
+                buffer[n++] = (w << 6) + Long.numberOfTrailingZeros(empty);
+                empty &= empty - 1;
+            }
+        }
+        return n - start;
+    }
+
+    /**Writes the moves worth searching into BUFFER starting at START and
+     * returns how many there are. On a sparse board (see Lines) these are
+     * the empty squares within Lines.RADIUS rows and columns of a piece,
+     * kept up to date by every move, or the centre square on an empty
+     * board: a Gomoku-size board has over 200 empty squares, of which
+     * only these few dozen matter. On smaller boards they are all the
+     * legal moves.*/
+    int candidateMoves(int[] buffer, int start) {
+        if (_near == null) {
+            return legalMoves(buffer, start);
+        }
+        if (_filled == 0) {
+            buffer[start] = _lines.index(cols / 2, rows / 2);
+            return 1;
+        }
+        int n = start;
+        for (int w = 0; w < _lines.words; w += 1) {
+            long candidates = _candidates[w];
+            while (candidates != 0) {
+                buffer[n++] = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+            }
+        }
+        return n - start;
+    }
+
     /**Return the current Player who is next to play.*/
     public Piece getCurrPlayer() {
         return this.currPlayer;
@@ -289,62 +622,73 @@ public class Board {
 
     /**Get the topmost horizontal line. Returns it from left-to-right.*/
     public Piece[] getTopLine() {
-        Piece[] topLine = new Piece[3];
-        for (int i = 0; i < this.getBoard().length; i += 1) {
-            topLine[i] = this.getBoard()[i][2];
+        Piece[] topLine = new Piece[cols];
+        for (int i = 0; i < cols; i += 1) {
+            topLine[i] = get(i, rows - 1);
         }
         return topLine;
     }
 
     /**Get the leftmost vertical line. Returns it from top-to-bottom.*/
     public Piece[] getLeftLine() {
-        Piece[] leftLine = new Piece[3];
-        for (int i = 0; i < this._board.length; i += 1) {
-            leftLine[i] = _board[0][2 - i];
+        Piece[] leftLine = new Piece[rows];
+        for (int i = 0; i < rows; i += 1) {
+            leftLine[i] = get(0, rows - 1 - i);
         }
         return leftLine;
     }
 
     /**Get the rightmost vertical line. Returns it from top-to-bottom.*/
     public Piece[] getRightLine() {
-        Piece[] rightLine = new Piece[3];
-        for (int i = 0; i < this._board.length; i += 1) {
-            rightLine[i] = _board[2][2-i];
+        Piece[] rightLine = new Piece[rows];
+        for (int i = 0; i < rows; i += 1) {
+            rightLine[i] = get(cols - 1, rows - 1 - i);
         }
         return rightLine;
     }
 
     /**Get the bottommost horizontal line. Returns it from left-to-right.*/
     public Piece[] getBottomLine() {
-        Piece[] bottomLine = new Piece[3];
-        for (int i = 0; i < _board.length; i += 1) {
-            bottomLine[i] = _board[i][0];
+        Piece[] bottomLine = new Piece[cols];
+        for (int i = 0; i < cols; i += 1) {
+            bottomLine[i] = get(i, 0);
         }
         return bottomLine;
     }
 
-    /**Returns an array of the edges of the 3x3 board.*/
+    /**Returns the edge squares of the board: every square on the border
+     * that is not a corner, column by column.*/
     public List<Piece> getEdges() {
         List<Piece> result = new ArrayList<>();
-        result.add(_board[0][1]);
-        result.add(_board[1][0]);
-        result.add(_board[1][2]);
-        result.add(_board[2][1]);
+        for (int col = 0; col < cols; col += 1) {
+            for (int row = 0; row < rows; row += 1) {
+                boolean border = col == 0 || col == cols - 1 || row == 0 || row == rows - 1;
+                boolean corner = (col == 0 || col == cols - 1) && (row == 0 || row == rows - 1);
+                if (border && !corner) {
+                    result.add(get(col, row));
+                }
+            }
+        }
         return result;
     }
 
-    /** Getter method for board.*/
+    /** Getter method for board. Returns a fresh [column][row] snapshot;
+     *  writing to it does not change this board.*/
     public Piece[][] getBoard() {
-        return _board;
+        Piece[][] result = new Piece[cols][rows];
+        for (int col = 0; col < cols; col += 1) {
+            for (int row = 0; row < rows; row += 1) {
+                result[col][row] = get(col, row);
+            }
+        }
+        return result;
     }
 
     /** Returns whether or not this board is empty.*/
     public boolean isEmpty() {
-        for (int col = 0; col < _board.length; col += 1) {
-            for (int row = 0; row < _board.length; row += 1) {
-                if (_board[col][row] != EMP) {
-                    return false;
-                }
+        for (int w = 0; w < _lines.words; w += 1) {
+            if ((_bits[X.ordinal()][w] | _bits[O.ordinal()][w]) != 0) {
+                return false;
             }
         }
         return true;
@@ -2,7 +2,23 @@ package game;
 
 import org.junit.Test;
 
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Random;
+import javax.management.ObjectName;
 
 import static game.Piece.*;
 
@@ -101,4 +117,747 @@ public class BoardTest {
         System.out.println(boi.getCurrPlayer());
     }
 
+    @Test
+    public void bitboardWins() {
+        Board board = new Board(4);
+        board.makeMove("1,1");
+        board.makeMove("1,2");
+        board.makeMove("2,2");
+        board.makeMove("1,3");
+        board.makeMove("3,3");
+        assertFalse(board.isGameOver());
+        board.makeMove("1,4");
+        board.makeMove("4,4");
+        assertTrue(board.isGameOver());
+        assertEquals(X, board.getWinner());
+        assertEquals(O, board.get(3, 0));
+        assertEquals(EMP, board.get(3, 1));
+    }
+
+    @Test
+    public void makeUnmake() {
+        Board board = new Board();
+        board.makeMove("1,1");
+        board.makeMove("2,1");
+        board.makeMove("1,2");
+        board.makeMove("2,2");
+        board.makeMove("1,3");
+        assertTrue(board.isGameOver());
+        assertEquals(X, board.getWinner());
+        board.unmakeMove();
+        assertFalse(board.isGameOver());
+        assertNull(board.getWinner());
+        assertEquals(X, board.getCurrPlayer());
+        assertEquals(EMP, board.get(2, 0));
+        assertEquals(4, board.historySize());
+        while (board.historySize() > 0) {
+            board.unmakeMove();
+        }
+        assertTrue(board.isEmpty());
+    }
+
+    @Test
+    public void symmetricHashes() {
+        Board board = new Board(3, new Piece[][] {{X, O, EMP}, {EMP, X, EMP}, {EMP, EMP, EMP}});
+        Board rotated = new Board(3, new Piece[][] {{EMP, EMP, EMP}, {O, X, EMP}, {X, EMP, EMP}});
+        assertEquals(board.hash(board.canonicalSymmetry()), rotated.hash(rotated.canonicalSymmetry()));
+        assertFalse(board.hash() == rotated.hash());
+
+        long before = emptyTest.hash();
+        emptyTest.makeMove("2,3");
+        assertFalse(before == emptyTest.hash());
+        emptyTest.unmakeMove();
+        assertEquals(before, emptyTest.hash());
+    }
+
+    @Test
+    public void tablebase() throws Exception {
+        Path file = Files.createTempFile("tablebase", ".bin");
+        Files.delete(file);
+        try {
+            Tablebase table = Tablebase.load(file);
+            assertTrue(Files.exists(file));
+            Board empty = new Board();
+            assertEquals(PerfectPlay.DRAW, table.result(empty));
+            assertEquals(PerfectPlay.DRAW, Tablebase.open(file).result(empty));
+            assertEquals(5478, perfectMoves(table, empty, new boolean[19683]));
+            empty.makeMove("1,1");
+            empty.makeMove("1,2");
+            assertEquals(PerfectPlay.X_WINS, table.result(empty));
+
+            Board big = new Board(4, 4, 3);
+            assertEquals(PerfectPlay.UNKNOWN, table.result(big));
+            assertEquals(-1, table.bestMove(big));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** Checks that TABLE's move keeps the result of every position
+     *  reachable from BOARD not yet SEEN, and returns how many there were.*/
+    private static int perfectMoves(Tablebase table, Board board, boolean[] seen) {
+        int index = Tablebase.index(board);
+        if (seen[index]) {
+            return 0;
+        }
+        seen[index] = true;
+        int result = table.result(board);
+        assertTrue(result != PerfectPlay.UNKNOWN);
+        if (board.isGameOver()) {
+            assertEquals(-1, table.bestMove(board));
+            return 1;
+        }
+        int move = table.bestMove(board);
+        board.makeMove(move);
+        assertEquals(result, table.result(board));
+        board.unmakeMove();
+        int count = 1;
+        int[] moves = new int[9];
+        for (int n = board.legalMoves(moves, 0) - 1; n >= 0; n -= 1) {
+            board.makeMove(moves[n]);
+            count += perfectMoves(table, board, seen);
+            board.unmakeMove();
+        }
+        return count;
+    }
+
+    @Test
+    public void mnkBoards() {
+        Board board = new Board(5, 5, 4);
+        board.makeMove("2,2");
+        board.makeMove("1,1");
+        board.makeMove("3,3");
+        board.makeMove("1,2");
+        board.makeMove("4,4");
+        assertFalse(board.isGameOver());
+        board.makeMove("1,3");
+        board.makeMove("5,5");
+        assertEquals(X, board.getWinner());
+
+        Board wide = new Board(3, 12, 3);
+        assertEquals(36, wide.legalMoves().size());
+        wide.makeMove("2,11");
+        wide.makeMove("1,12");
+        assertEquals(X, wide.get(10, 1));
+        assertEquals(O, wide.get(11, 0));
+        assertEquals(12, wide.getTopLine().length);
+        assertEquals(3, wide.getLeftLine().length);
+    }
+
+    @Test
+    public void intMoves() {
+        Board board = new Board(3, 12, 3);
+        int[] buffer = new int[board.cells() + 2];
+        assertEquals(36, board.legalMoves(buffer, 2));
+        assertEquals(0, buffer[2]);
+        assertEquals(35, buffer[37]);
+        board.makeMove(board.square("3,12"));
+        board.makeMove(0);
+        assertEquals("3,12", board.moveName(35));
+        assertEquals(34, board.legalMoves(buffer, 0));
+        assertEquals(1, buffer[0]);
+        assertEquals(34, buffer[33]);
+    }
+
+    @Test
+    public void selfPlay() throws Exception {
+        SelfPlay perfect = new SelfPlay(3, 3, 3, SelfPlay.Player.ENGINE, SelfPlay.Player.ENGINE,
+                                        SearchLimits.depth(9), true);
+        SelfPlay.Stats stats = perfect.run(5, 2, 1);
+        assertEquals(5, stats.games());
+        assertEquals(5, stats.draws);
+        assertEquals(5 * 9, stats.moves);
+        assertTrue(stats.nodes > 0);
+
+        SelfPlay random = new SelfPlay(3, 3, 3, SelfPlay.Player.RANDOM, SelfPlay.Player.RANDOM,
+                                       SearchLimits.depth(1), true);
+        SelfPlay.Stats first = random.run(40, 2, 7);
+        SelfPlay.Stats again = random.run(40, 2, 7);
+        assertEquals(40, first.xWins + first.oWins + first.draws);
+        assertEquals(first.toString(), again.toString());
+        assertEquals(0, first.nodes);
+        assertTrue(first.moves >= 40 * 5 && first.moves <= 40 * 9);
+    }
+
+    @Test
+    public void orderedSearch() {
+        Board board = new Board(4, 4, 3);
+        board.makeMove("2,2");
+        board.makeMove("1,1");
+        Search ordered = new Search(new HeapTable(1 << 12));
+        Search plain = new Search(new HeapTable(1 << 12), false);
+        SearchResult first = new SearchResult(true);
+        SearchResult second = new SearchResult(true);
+        assertEquals(plain.run(board, 5, Integer.MIN_VALUE, Integer.MAX_VALUE, second),
+                     ordered.run(board, 5, Integer.MIN_VALUE, Integer.MAX_VALUE, first));
+        assertEquals(2, board.historySize());
+        assertTrue(first.nodes() > 0);
+        assertTrue(first.nodes() <= second.nodes());
+    }
+
+    @Test
+    public void concurrentEngines() throws Exception {
+        Board board = new Board(4, 4, 3);
+        board.makeMove("2,2");
+        int expected = new Engine().bestMove(board, SearchLimits.depth(5)).square();
+        int[] moves = new int[4];
+        Thread[] threads = new Thread[moves.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int slot = t;
+            Board copy = Board.copyBoard(board);
+            threads[t] = new Thread(() -> {
+                Engine engine = new Engine();
+                for (int n = 0; n < 20; n += 1) {
+                    engine.newGame();
+                    moves[slot] = engine.bestMove(copy, SearchLimits.depth(5)).square();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int move : moves) {
+            assertEquals(expected, move);
+        }
+        try {
+            SearchLimits.depth(0);
+            fail("A search of no plies should be rejected.");
+        } catch (IllegalArgumentException error) {
+            assertTrue(error.getMessage().contains("at least 1"));
+        }
+    }
+
+    @Test
+    public void gameServer() throws Exception {
+        GameServer server = new GameServer(0, 2, SearchLimits.depth(1));
+        Thread serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+        });
+        serving.start();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream()));
+            out.println("2,2");
+            assertTrue(in.readLine().startsWith("move "));
+            out.println("2,2");
+            assertEquals("error This is an illegal move.", in.readLine());
+            out.println("new 9999 9999");
+            assertEquals("error Boards may have at most 32 rows and columns.", in.readLine());
+            out.println("new 4 4 3");
+            out.println("go");
+            assertEquals("ok", in.readLine());
+            assertTrue(in.readLine().startsWith("move "));
+            out.println("quit");
+            assertEquals("bye", in.readLine());
+            assertNull(in.readLine());
+        } finally {
+            server.close();
+            serving.join();
+        }
+        assertEquals(0, server.sessions());
+    }
+
+    @Test
+    public void replay() throws Exception {
+        Path dir = Files.createTempDirectory("replay");
+        Path script = dir.resolve("games.in");
+        Path log = dir.resolve("games.games");
+        Files.write(script, List.of("1,1", "2,1", "1,2", "2,2", "1,3", "comp",
+                                    "display", "2,2", "2,2", "comp",
+                                    "new 4 4 3", "1,1", "", "5,5"));
+        StringBuilder out = new StringBuilder();
+        Replay.Stats text;
+        try (GameLog.Writer writer = new GameLog.Writer(log)) {
+            text = new Replay(writer).run(List.of(script), 1, out);
+        }
+        assertEquals("games.in#1 X 5\ngames.in#2 invalid (line 9: illegal move) 1\n"
+                     + "games.in#3 invalid (line 14: illegal move) 1\n", out.toString());
+        assertEquals(1, text.xWins);
+        assertEquals(2, text.invalid);
+
+        Replay.Stats binary = new Replay(null).run(List.of(log), 1, null);
+        assertEquals(1, binary.games());
+        assertEquals(1, binary.xWins);
+    }
+
+    @Test
+    public void mcts() {
+        Board board = new Board();
+        board.makeMove("1,1");
+        board.makeMove("3,1");
+        board.makeMove("1,2");
+        board.makeMove("3,2");
+        Move win = new Engine(new Mcts(2)).bestMove(board, SearchLimits.iterations(2000));
+        assertEquals("1,3", win.name(board));
+        assertTrue(win.score() > 0);
+        assertEquals(4, board.historySize());
+
+        Board big = new Board(7, 7, 5);
+        Move move = new Engine(new Mcts(1)).bestMove(big, SearchLimits.millis(50).withIterations(500));
+        assertTrue(move.nodes() <= 500);
+        assertEquals(EMP, big.get(move.square() / 7, move.square() % 7));
+    }
+
+    @Test
+    public void lineCounts() {
+        Board board = new Board(4, 4, 3);
+        assertEquals(0, board.openLines(X, 1));
+        board.makeMove("1,1");
+        assertEquals(3, board.openLines(X, 1));
+        board.makeMove("1,2");
+        assertEquals(2, board.openLines(X, 1));
+        assertEquals(3, board.openLines(O, 1));
+        board.makeMove("2,2");
+        assertEquals(1, board.openLines(X, 2));
+        board.unmakeMove();
+        board.unmakeMove();
+        assertEquals(3, board.openLines(X, 1));
+        assertEquals(0, board.openLines(O, 1));
+
+        Board fork = new Board(4, 4, 3);
+        fork.makeMove("2,2");
+        fork.makeMove("4,4");
+        fork.makeMove("2,3");
+        Board copy = Board.copyBoard(fork);
+        assertEquals(2, copy.openLines(X, 2));
+        assertEquals(Evaluator.DOUBLE_THREAT, Evaluator.evaluate(copy));
+        copy.makeMove("1,1");
+        assertEquals(Evaluator.THREAT, Evaluator.evaluate(copy));
+
+        Board gap = new Board(4, 4, 3);
+        for (String move : new String[] {"1,1", "4,1", "1,2", "3,4", "1,4"}) {
+            gap.makeMove(move);
+        }
+        assertEquals(2, gap.openLines(X, 2));
+        assertEquals(1, gap.completionSquares(X));
+        assertTrue(Evaluator.evaluate(gap) < Evaluator.DOUBLE_THREAT);
+
+        Random random = new Random(7);
+        for (int[] shape : new int[][] {{4, 4, 3}, {5, 6, 4}, {3, 3, 1}, {7, 7, 4}}) {
+            for (int game = 0; game < 20; game += 1) {
+                Board walk = new Board(shape[0], shape[1], shape[2]);
+                while (!walk.isGameOver()) {
+                    List<String> moves = walk.legalMoves();
+                    walk.makeMove(moves.get(random.nextInt(moves.size())));
+                    if (random.nextInt(4) == 0) {
+                        walk.unmakeMove();
+                    }
+                    Board[] views = {walk, Board.copyBoard(walk),
+                                     new Board(shape[0], shape[1], shape[2], walk.getBoard())};
+                    for (Board view : views) {
+                        for (Piece player : new Piece[] {X, O}) {
+                            assertEquals(completionSquares(view, player), view.completionSquares(player));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /** Counts the distinct empty squares that complete a line for PLAYER in
+     *  BOARD by looking at every line.*/
+    private static int completionSquares(Board board, Piece player) {
+        Lines lines = Lines.forShape(board.rows(), board.cols(), board.k());
+        Piece other = (player == X) ? O : X;
+        boolean[] seen = new boolean[board.cells()];
+        int count = 0;
+        for (int l = 0; l < lines.count; l += 1) {
+            if (board.lineCount(player, l) == board.k() - 1 && board.lineCount(other, l) == 0) {
+                for (int i : lines.squares(l)) {
+                    if (!board.isOccupied(i) && !seen[i]) {
+                        seen[i] = true;
+                        count += 1;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void openingBook() throws Exception {
+        OpeningBook.Builder builder = new OpeningBook.Builder(3, 3, 3, 2, SearchLimits.depth(9));
+        builder.addAll();
+        assertEquals(4, builder.size());
+        Path file = Files.createTempDirectory("book").resolve("book.bin");
+        builder.build().save(file);
+        OpeningBook book = OpeningBook.load(file);
+        assertEquals(4, book.size());
+
+        Board board = new Board();
+        board.makeMove("3,1");
+        Move reply = book.probe(board);
+        assertEquals("2,2", reply.name(board));
+        assertEquals(0, reply.nodes());
+        board.makeMove("2,2");
+        assertNull(book.probe(board));
+        assertNull(book.probe(new Board(4, 4, 3)));
+        Board empty = new Board();
+        assertEquals(book.probe(empty).square(),
+                     new Engine(null, null, null, book).bestMove(empty, SearchLimits.depth(1)).square());
+
+        OpeningBook.Builder grown = new OpeningBook.Builder(OpeningBook.load(file), SearchLimits.depth(9));
+        grown.write(3, 3, 3, new int[] {0, 4, 8}, 3);
+        grown.write(4, 4, 3, new int[] {0}, 1);
+        assertEquals(4, grown.size());
+
+        OpeningBook.Builder seeded = new OpeningBook.Builder(3, 3, 3, 2, SearchLimits.depth(9));
+        seeded.write(3, 3, 3, new int[] {4, 0, 8}, 3);
+        assertEquals(2, seeded.size());
+        seeded.addAll();
+        assertEquals(4, seeded.size());
+    }
+
+    @Test
+    public void searchStats() throws Exception {
+        EngineMetrics metrics = EngineMetrics.GLOBAL;
+        metrics.register();
+        long moves = metrics.getMoves();
+        long nodes = metrics.getNodes();
+        StringWriter trace = new StringWriter();
+        metrics.trace(trace);
+        Board board = new Board(4, 4, 3);
+        board.makeMove("2,2");
+        Move move;
+        try {
+            move = new Engine().bestMove(board, SearchLimits.depth(3));
+        } finally {
+            metrics.trace(null);
+        }
+        SearchStats stats = move.stats();
+        assertEquals(3, stats.depth);
+        assertTrue(stats.leaves > 0 && stats.leaves < stats.nodes);
+        assertTrue(stats.hits <= stats.probes);
+        assertTrue(stats.nanos > 0);
+        assertEquals(moves + 1, metrics.getMoves());
+        assertEquals(nodes + stats.nodes, metrics.getNodes());
+        assertTrue(trace.toString().startsWith("{\"ply\":1,\"player\":\"O\",\"move\":\"" + move.name(board) + "\""));
+        Object jmx = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(EngineMetrics.NAME), "Moves");
+        assertEquals(metrics.getMoves(), jmx);
+    }
+
+    @Test
+    public void textRenderer() {
+        TextRenderer renderer = new TextRenderer(new ByteArrayOutputStream());
+        assertEquals("-------\n|x|x| |\n-------\n|o|o|o|\n-------\n| |x| |\n-------\n",
+                     renderer.frame(horizontalWinTwo));
+        Board wide = new Board(2, 4, 2);
+        wide.makeMove("1,4");
+        assertEquals("---------\n| | | | |\n---------\n| | | |x|\n---------\n", renderer.frame(wide));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TextRenderer(out).render(wide);
+        assertEquals(renderer.frame(wide), out.toString());
+        Renderer.NONE.render(wide);
+    }
+
+    @Test
+    public void offHeapTable() throws Exception {
+        TranspositionTable table = new OffHeapTable(1);
+        assertEquals(1 << 16, table.capacity());
+        long key = 0x123456789ABCDEFL;
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+        table.store(key, -7, 5, TranspositionTable.LOWER, TranspositionTable.NO_MOVE);
+        long entry = table.probe(key);
+        assertEquals(-7, TranspositionTable.score(entry));
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        assertEquals(TranspositionTable.NO_MOVE, TranspositionTable.move(entry));
+        assertEquals(TranspositionTable.MISS, table.probe(key + (1 << 16)));
+        table.clear();
+        assertEquals(TranspositionTable.MISS, table.probe(key));
+
+        Board board = new Board(4, 4, 3);
+        board.makeMove("2,2");
+        SearchResult heap = new SearchResult(false);
+        new Search(new HeapTable(1 << 12)).run(board, 4, Integer.MIN_VALUE, Integer.MAX_VALUE, heap);
+        SearchResult shared = new SearchResult(false);
+        new ParallelSearch(3, table).search(board, 4, shared);
+        assertEquals(heap.score(), shared.score());
+    }
+
+    @Test
+    public void solver() throws Exception {
+        Solver solver = new Solver(3, 3, 3, 1);
+        assertEquals(PerfectPlay.DRAW, solver.solve(new Board(3, 3, 3)));
+        Board board = new Board(3, 3, 3);
+        board.makeMove("1,1");
+        board.makeMove("1,2");
+        assertEquals(PerfectPlay.X_WINS, solver.result(board));
+        int move = solver.bestMove(board);
+        board.makeMove(move);
+        assertEquals(PerfectPlay.X_WINS, solver.result(board));
+
+        Path file = Files.createTempFile("solve", ".bin");
+        try {
+            Solver wide = new Solver(3, 4, 3, 4);
+            assertEquals(PerfectPlay.X_WINS, wide.solve(new Board(3, 4, 3)));
+            wide.save(file);
+            Solver loaded = Solver.load(file);
+            assertEquals(PerfectPlay.X_WINS, loaded.solve(new Board(3, 4, 3)));
+            assertEquals(0, loaded.nodes());
+
+            Board empty = new Board(3, 4, 3);
+            Move played = new Engine(new Search(new HeapTable(1 << 10)), null, loaded).bestMove(empty, SearchLimits.depth(1));
+            assertEquals(loaded.bestMove(empty), played.square());
+            empty.makeMove(played.square());
+            assertEquals(PerfectPlay.X_WINS, loaded.result(empty));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void enumerator() {
+        Enumerator.Stats stats;
+        try (Enumerator enumerator = new Enumerator(3, 3, 3, 4)) {
+            stats = enumerator.run();
+        }
+        assertEquals(255168, stats.games());
+        assertEquals(5478, stats.positions());
+        assertEquals(765, stats.canonical());
+        assertArrayEquals(new long[] {0, 0, 0, 0, 0, 1440, 0, 47952, 0, 81792}, stats.xWins);
+        assertArrayEquals(new long[] {0, 0, 0, 0, 0, 0, 5328, 0, 72576, 0}, stats.oWins);
+        assertEquals(46080, stats.draws[9]);
+        assertArrayEquals(new long[] {1, 9, 72, 252, 756, 1260, 1520, 1140, 390, 78}, stats.positions);
+
+        Enumerator.Stats one, many;
+        try (Enumerator single = new Enumerator(3, 4, 3, 1);
+             Enumerator parallel = new Enumerator(3, 4, 3, 3)) {
+            one = single.run();
+            many = parallel.run();
+        }
+        assertArrayEquals(one.positions, many.positions);
+        assertArrayEquals(one.xWins, many.xWins);
+        assertEquals(one.games(), many.games());
+        assertEquals(one.games(), games(new Board(3, 4, 3)));
+    }
+
+    /** Counts the games from BOARD by playing every one of them out.*/
+    private static long games(Board board) {
+        if (board.isGameOver()) {
+            return 1;
+        }
+        long games = 0;
+        for (int move = 0; move < board.cells(); move += 1) {
+            if (board.get(move / board.rows(), move % board.rows()) == EMP) {
+                board.makeMove(move);
+                games += games(board);
+                board.unmakeMove();
+            }
+        }
+        return games;
+    }
+
+    @Test
+    public void pondering() {
+        EngineMetrics metrics = EngineMetrics.GLOBAL;
+        Engine engine = new Engine();
+        Board board = new Board(4, 4, 3);
+        SearchLimits limits = SearchLimits.depth(3);
+        engine.ponder(board, limits);
+        engine.awaitPondering();
+        board.makeMove("1,1");
+        long pondered = metrics.getPonderMoves();
+        Move move = engine.bestMove(board, limits);
+        assertEquals(pondered + 1, metrics.getPonderMoves());
+        assertEquals(0, move.nodes());
+        assertEquals(EMP, board.get(move.square() / board.rows(), move.square() % board.rows()));
+
+        Board timed = new Board(4, 4, 3);
+        engine.ponder(timed, SearchLimits.millis(60000));
+        engine.awaitPondering();
+        timed.makeMove("2,2");
+        move = engine.bestMove(timed, SearchLimits.millis(60000));
+        assertEquals(pondered + 2, metrics.getPonderMoves());
+        assertEquals(0, move.nodes());
+
+        Board big = new Board(7, 7, 5);
+        big.makeMove("4,4");
+        long hash = big.hash();
+        engine.ponder(big, SearchLimits.millis(60000));
+        big.makeMove("3,3");
+        move = engine.bestMove(big, SearchLimits.depth(1));
+        assertEquals(EMP, big.get(move.square() / big.rows(), move.square() % big.rows()));
+        big.unmakeMove();
+        assertEquals(hash, big.hash());
+    }
+
+    @Test(timeout = 30000)
+    public void timedSearch() {
+        SearchLimits limits = SearchLimits.millis(200);
+        assertEquals(100, limits.softMillis());
+        assertEquals(50, limits.withSoftMillis(50).softMillis());
+        assertEquals(200, limits.withSoftMillis(500).softMillis());
+
+        Board board = new Board(7, 7, 5);
+        board.makeMove("4,4");
+        long hash = board.hash();
+        Engine engine = new Engine();
+        Move move = engine.bestMove(board, limits);
+        assertEquals(hash, board.hash());
+        assertEquals(EMP, board.get(move.square() / board.rows(), move.square() % board.rows()));
+        assertTrue(move.stats().depth >= 2);
+        assertTrue(move.stats().depth < board.cells() - board.historySize());
+        assertEquals(move.square(), engine.bestSoFar().square());
+
+        Engine parallel = new Engine(new Search(new HeapTable(1 << 12)), new ParallelSearch(2), null);
+        move = parallel.bestMove(board, limits.withSoftMillis(200));
+        assertEquals(EMP, board.get(move.square() / board.rows(), move.square() % board.rows()));
+        assertTrue(move.stats().depth < board.cells() - board.historySize());
+        assertEquals(move.square(), parallel.bestSoFar().square());
+
+        Board small = new Board(3, 3, 3);
+        small.makeMove("1,1");
+        Move timed = new Engine().bestMove(small, SearchLimits.millis(60000));
+        Move deep = new Engine().bestMove(small, SearchLimits.depth(8));
+        assertEquals(deep.score(), timed.score());
+        assertEquals(8, timed.stats().depth);
+    }
+
+    @Test
+    public void batchEvaluator() throws Exception {
+        List<String> positions = List.of("3 3 3", "4 4 3 2,2", "3 3 3 1,1 2,2 1,2 1,3 3,1",
+                                         "3 3 3 1,1 2,1 1,2 2,2 1,3", "4 4 3 2,2");
+        try (BatchEvaluator evaluator = new BatchEvaluator(4, 3, 1)) {
+            List<BatchEvaluator.Result> results = evaluator.evaluate(positions);
+            assertEquals(positions.size(), results.size());
+            for (int n = 0; n < positions.size(); n += 1) {
+                BatchEvaluator.Result result = results.get(n);
+                assertEquals(positions.get(n), result.position());
+                Board board = BatchEvaluator.parse(positions.get(n));
+                if (board.isGameOver()) {
+                    assertEquals(-1, result.move());
+                    continue;
+                }
+                SearchResult expected = new SearchResult(board.getCurrPlayer() != O);
+                new Search(new HeapTable(1 << 12)).run(board, 4, Integer.MIN_VALUE, Integer.MAX_VALUE, expected);
+                assertEquals(expected.score(), result.score());
+                assertEquals(board.moveName(result.move()), result.moveName());
+            }
+            assertEquals(Integer.MAX_VALUE, results.get(3).score());
+            assertEquals(0, results.get(4).nodes());
+
+            String[] shapes = {"4 4 3 2,2 1,1 2,3", "4 4 4 2,2 1,1 2,3"};
+            assertTrue(BatchEvaluator.parse(shapes[0]).hash() != BatchEvaluator.parse(shapes[1]).hash());
+            for (BatchEvaluator.Result result : evaluator.evaluate(shapes)) {
+                Board board = BatchEvaluator.parse(result.position());
+                SearchResult expected = new SearchResult(board.getCurrPlayer() != O);
+                new Search(new HeapTable(1 << 12)).run(board, 4, Integer.MIN_VALUE, Integer.MAX_VALUE, expected);
+                assertEquals(expected.score(), result.score());
+                assertTrue(result.nodes() > 0);
+            }
+
+            Path file = Files.createTempFile("positions", ".txt");
+            try {
+                Files.write(file, List.of("# two positions", "3 3 3 2,2", "", "3 3 3 2,2 2,2",
+                                          "3 3 3 2,2 1,1 3,3"));
+                StringBuilder out = new StringBuilder();
+                evaluator.evaluate(file, out);
+                String[] lines = out.toString().split("\n");
+                assertEquals(3, lines.length);
+                assertTrue(lines[0].startsWith("3 3 3 2,2\t"));
+                assertTrue(lines[1].startsWith("3 3 3 2,2 2,2\t-\terror line 4: "));
+                assertTrue(lines[2].startsWith("3 3 3 2,2 1,1 3,3\t"));
+                assertTrue(lines[2].matches(".*\t-?\\d+\t\\d,\\d"));
+            } finally {
+                Files.delete(file);
+            }
+            BatchEvaluator.Result[] bad = evaluator.evaluate(new String[] {"3 3", "3 3 3 2,2"});
+            assertEquals("3 3", bad[0].position());
+            assertNotNull(bad[0].error());
+            assertTrue(bad[0].toString().startsWith("3 3\t-\terror "));
+            assertNull(bad[1].error());
+            assertNotNull(bad[1].moveName());
+        }
+    }
+
+    @Test
+    public void sparseCandidates() {
+        int[] moves = new int[225];
+        Board board = new Board(15, 15, 5);
+        assertEquals(1, board.candidateMoves(moves, 0));
+        assertEquals("8,8", board.moveName(moves[0]));
+        board.makeMove("8,8");
+        assertEquals(24, board.candidateMoves(moves, 0));
+        board.makeMove("1,1");
+        board.makeMove("8,9");
+        for (int n = board.candidateMoves(moves, 0) - 1; n >= 0; n -= 1) {
+            int square = moves[n];
+            assertFalse(board.isOccupied(square));
+            assertTrue(near(board, square, 2));
+        }
+        Board copy = Board.copyBoard(board);
+        board.unmakeMove();
+        board.unmakeMove();
+        assertEquals(24, board.candidateMoves(moves, 0));
+        assertEquals(28 + 8, copy.candidateMoves(moves, 0));
+
+        Board small = new Board(4, 4, 3);
+        small.makeMove("1,1");
+        assertEquals(15, small.candidateMoves(moves, 0));
+    }
+
+    /** True if empty SQUARE of BOARD is within RADIUS rows and columns of a piece.*/
+    private static boolean near(Board board, int square, int radius) {
+        int rows = board.rows();
+        for (int i = 0; i < board.cells(); i += 1) {
+            if (board.isOccupied(i) && Math.abs(i % rows - square % rows) <= radius
+                && Math.abs(i / rows - square / rows) <= radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void threatSearch() {
+        String[] corners = {"1,1", "1,15", "15,1", "15,15"};
+        Board board = new Board(15, 15, 5);
+        String[] xs = {"8,5", "8,6", "8,7", "6,8", "7,8"};
+        String[] os = {"8,4", corners[0], corners[1], corners[2], corners[3]};
+        for (int n = 0; n < xs.length; n += 1) {
+            board.makeMove(xs[n]);
+            board.makeMove(os[n]);
+        }
+        long before = board.hash();
+        ThreatSearch fours = new ThreatSearch(10000, 10, false);
+        assertEquals("8,8", board.moveName(fours.winningMove(board)));
+        assertEquals(before, board.hash());
+        assertEquals("8,8", board.moveName(new ThreatSearch(10000, 10, true).winningMove(board)));
+
+        Board threes = new Board(15, 15, 5);
+        String[] twos = {"8,6", "8,7", "6,8", "7,8"};
+        for (int n = 0; n < twos.length; n += 1) {
+            threes.makeMove(twos[n]);
+            threes.makeMove(corners[n]);
+        }
+        assertEquals(-1, fours.winningMove(threes));
+        ThreatSearch search = new ThreatSearch(10000, 10, true);
+        int square = search.winningMove(threes);
+        assertTrue(square >= 0);
+        assertTrue(search.nodes() > 0);
+        threes.makeMove(square);
+        assertTrue(threes.getWinner() == null);
+        assertEquals(-1, search.winningMove(threes));
+
+        Board quiet = new Board(15, 15, 5);
+        quiet.makeMove("8,8");
+        quiet.makeMove("9,9");
+        assertEquals(-1, search.winningMove(quiet));
+
+        Engine engine = new Engine();
+        long threats = EngineMetrics.GLOBAL.getThreatMoves();
+        Move move = engine.bestMove(board, SearchLimits.depth(2));
+        assertEquals("8,8", board.moveName(move.square()));
+        assertEquals(Integer.MAX_VALUE, move.score());
+        assertEquals(threats + 1, EngineMetrics.GLOBAL.getThreatMoves());
+    }
+
 }
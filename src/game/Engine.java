@@ -0,0 +1,348 @@
+package game;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static game.Piece.*;
+
+/** Chooses moves, by alpha-beta search or by Monte Carlo tree search,
+ *  after looking in an opening book and a table of perfect play (a
+ *  Tablebase or a Solver) if it has them. On a board of more than
+ *  Lines.SPARSE_CELLS squares, a ThreatSearch then looks for a forced win.
+ *  Each Engine has its own search state (transposition table, killer moves
+ *  and history), which it keeps between moves of a game, so engines share
+ *  nothing and any number of them can run on different threads at once.
+ *  One engine serves one game at a time: bestMove is synchronized, and the
+ *  board passed to it must not be used by anyone else until it returns.
+ *
+ *  An alpha-beta engine can also ponder: search on a background thread
+ *  while the opponent thinks. It first guesses the opponent's reply with a
+ *  shallow search, then searches the position after that reply and after
+ *  each other reply to depth 1, then all of them to depth 2, and so on,
+ *  keeping the move of the deepest search finished for each. Asking for a
+ *  move stops pondering. If the reply played has been searched as deep as
+ *  the move needs (the depth asked for, or under a time limit the depth
+ *  the last timed search reached), its move is played at once; if not,
+ *  the search starts over, but with the transposition table warm from
+ *  pondering. Pondering fills the Search's table, so a parallel engine
+ *  should be given a ParallelSearch sharing that table. */
+final class Engine {
+
+    /** An engine searching on the calling thread, with no table of perfect play.*/
+    Engine() {
+        this(new Search(new HeapTable(1 << 16)), null, null);
+    }
+
+    /** An engine searching with SEARCH. If PARALLEL is not null, it splits
+     *  its searches across PARALLEL's threads instead; one ParallelSearch may
+     *  serve many engines. If TABLEBASE is not null, it is consulted first.*/
+    Engine(Search search, ParallelSearch parallel, PerfectPlay tablebase) {
+        this(search, parallel, tablebase, null);
+    }
+
+    /** As Engine(SEARCH, PARALLEL, TABLEBASE), but playing BOOK's move,
+     *  unless BOOK is null, in any position it has.*/
+    Engine(Search search, ParallelSearch parallel, PerfectPlay tablebase, OpeningBook book) {
+        this(search, parallel, tablebase, null, book);
+    }
+
+    /** An engine choosing its moves with MCTS, which suits boards too big
+     *  for alpha-beta to see far enough ahead.*/
+    Engine(Mcts mcts) {
+        this(mcts, null);
+    }
+
+    /** As Engine(MCTS), but playing BOOK's move, unless BOOK is null, in
+     *  any position it has.*/
+    Engine(Mcts mcts, OpeningBook book) {
+        this(null, null, null, mcts, book);
+    }
+
+    private Engine(Search search, ParallelSearch parallel, PerfectPlay tablebase, Mcts mcts,
+                   OpeningBook book) {
+        _book = book;
+        _search = search;
+        _parallel = parallel;
+        _tablebase = tablebase;
+        _mcts = mcts;
+    }
+
+    /** Returns the best move for the player to move in BOARD, searching no
+     *  further than LIMITS allow. BOARD is left as it was. The move is
+     *  recorded in EngineMetrics.GLOBAL.*/
+    synchronized Move bestMove(Board board, SearchLimits limits) {
+        if (board.isGameOver()) {
+            throw new IllegalArgumentException("The game is already over.");
+        }
+        long start = System.nanoTime();
+        stopPondering();
+        _bestSoFar = null;
+        Move booked = (_book == null) ? null : _book.probe(board);
+        if (booked != null) {
+            return finish(board, booked, EngineMetrics.Source.BOOK, start);
+        }
+        int square = (_tablebase == null) ? -1 : _tablebase.bestMove(board);
+        if (square >= 0) {
+            return finish(board, new Move(square, tablebaseScore(_tablebase.result(board)), 0),
+                          EngineMetrics.Source.TABLEBASE, start);
+        }
+        square = (board.cells() > Lines.SPARSE_CELLS) ? _threats.winningMove(board) : -1;
+        if (square >= 0) {
+            return finish(board, new Move(square, (board.getCurrPlayer() == X) ? Integer.MAX_VALUE : Integer.MIN_VALUE,
+                                          _threats.nodes()),
+                          EngineMetrics.Source.THREAT, start);
+        }
+        if (_mcts != null) {
+            return finish(board, _mcts.bestMove(board, limits), EngineMetrics.Source.MCTS, start);
+        }
+        Move pondered = _pondered.get(board.hash());
+        Integer ponderedDepth = _ponderedDepths.get(board.hash());
+        _pondered.clear();
+        _ponderedDepths.clear();
+        int needed = (limits.millis() == SearchLimits.UNLIMITED) ? limits.depth()
+            : Math.min(limits.depth(), Math.max(_timedDepth, 1));
+        if (pondered != null && ponderedDepth >= needed) {
+            return finish(board, new Move(pondered.square(), pondered.score(), 0), EngineMetrics.Source.PONDER, start);
+        }
+        if (limits.millis() != SearchLimits.UNLIMITED) {
+            return finish(board, deepen(board, limits, start), EngineMetrics.Source.SEARCH, start);
+        }
+        SearchResult result = new SearchResult(board.getCurrPlayer() != O);
+        if (_parallel == null) {
+            _search.table().newSearch();
+        }
+        search(board, limits.depth(), result, Long.MAX_VALUE);
+        return finish(board, new Move(result.move(), result.score(), result.stats()),
+                      EngineMetrics.Source.SEARCH, start);
+    }
+
+    /** Searches BOARD to depth 1, 2, 3 and so on up to LIMITS' depth (or
+     *  the end of the game) and returns the best move of the deepest search
+     *  that finished, with the counts of all of them. START is the
+     *  System.nanoTime() the move was asked for, from which LIMITS' times
+     *  run. No new depth is begun after the soft time, and a search still
+     *  running at the hard time is stopped and thrown away. Depth 1 always
+     *  finishes, so there is always a move. The search stops early once it
+     *  proves a win or loss. Each finished depth's move is published
+     *  through bestSoFar as soon as it is found.*/
+    private Move deepen(Board board, SearchLimits limits, long start) {
+        long deadline = start + limits.millis() * 1000000;
+        long soft = start + limits.softMillis() * 1000000;
+        int maxDepth = Math.min(limits.depth(), board.legalMoves(new int[board.cells()], 0));
+        if (_parallel == null) {
+            _search.table().newSearch();
+        }
+        SearchStats stats = new SearchStats();
+        Move best = null;
+        for (int depth = 1; depth <= Math.max(maxDepth, 1); depth += 1) {
+            SearchResult result = new SearchResult(board.getCurrPlayer() != O);
+            search(board, depth, result, (depth == 1) ? Long.MAX_VALUE : deadline);
+            stats.add(result.stats());
+            if (result.abandoned()) {
+                break;
+            }
+            best = new Move(result.move(), result.score(), result.stats());
+            _bestSoFar = best;
+            _timedDepth = depth;
+            if (result.score() == Integer.MAX_VALUE || result.score() == Integer.MIN_VALUE
+                || System.nanoTime() >= soft) {
+                break;
+            }
+        }
+        return new Move(best.square(), best.score(), stats);
+    }
+
+    /** Runs one alpha-beta search of BOARD to DEPTH into RESULT, in
+     *  parallel if the engine has a ParallelSearch, abandoning RESULT if it
+     *  is still running when System.nanoTime() reaches DEADLINE.*/
+    private void search(Board board, int depth, SearchResult result, long deadline) {
+        if (_parallel != null) {
+            _parallel.search(board, depth, result, deadline);
+            return;
+        }
+        _search.deadline(deadline);
+        _search.run(board, depth, Integer.MIN_VALUE, Integer.MAX_VALUE, result);
+        _search.deadline(Long.MAX_VALUE);
+        if (_search.stopped()) {
+            _search.restart();
+            result.abandon();
+        }
+    }
+
+    /** Returns the best move found so far by the alpha-beta search this
+     *  engine is running under a time limit, that of its deepest finished
+     *  depth, or the move it chose last if it is not running one; null if
+     *  there is none. May be called from any thread.*/
+    Move bestSoFar() {
+        return _bestSoFar;
+    }
+
+    /** Returns MOVE, chosen from SOURCE for BOARD, with the time since START
+     *  (a System.nanoTime) added to its stats, after recording it.*/
+    private static Move finish(Board board, Move move, EngineMetrics.Source source, long start) {
+        SearchStats stats = move.stats();
+        stats.nanos = System.nanoTime() - start;
+        Move timed = new Move(move.square(), move.score(), stats);
+        EngineMetrics.GLOBAL.record(board, timed, source);
+        return timed;
+    }
+
+    /** Starts pondering BOARD, a position the opponent is to move in, on a
+     *  background thread, deepening up to LIMITS' depth (or the end of the
+     *  game), until the next bestMove or stopPondering. BOARD is copied, so the caller may go on
+     *  using it. Does nothing for an MCTS engine or if the game is over.*/
+    synchronized void ponder(Board board, SearchLimits limits) {
+        stopPondering();
+        _pondered.clear();
+        _ponderedDepths.clear();
+        if (_search == null || board.isGameOver()) {
+            return;
+        }
+        Board copy = Board.copyBoard(board);
+        _ponderer = new Thread(() -> ponderReplies(copy, limits.depth()), "ponder");
+        _ponderer.setDaemon(true);
+        _ponderer.start();
+    }
+
+    /** Stops pondering, if the engine is, and waits for it to stop.*/
+    synchronized void stopPondering() {
+        if (_ponderer != null) {
+            _search.stop();
+            awaitPondering();
+            _search.restart();
+        }
+    }
+
+    /** Waits until pondering has searched every reply, or been stopped.*/
+    synchronized void awaitPondering() {
+        if (_ponderer == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (_ponderer.isAlive()) {
+            try {
+                _ponderer.join();
+            } catch (InterruptedException error) {
+                interrupted = true;
+            }
+        }
+        _ponderer = null;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Body of the pondering thread: searches BOARD's replies with _search,
+     *  likeliest first, all to depth 1, then all to depth 2 and so on up to
+     *  DEPTH, saving the move found after each in _pondered and the depth
+     *  in _ponderedDepths. A reply whose result is proven, or searched to
+     *  the end of the game, is saved as searched to any depth and not
+     *  searched again. Replies leading to book positions are skipped, as
+     *  the book will answer them. Only this thread touches _search,
+     *  _pondered and _ponderedDepths until stopPondering has joined it.*/
+    private void ponderReplies(Board board, int depth) {
+        int[] replies = new int[board.cells()];
+        int count = board.candidateMoves(replies, 0);
+        SearchResult guess = new SearchResult(board.getCurrPlayer() != O);
+        _search.table().newSearch();
+        _search.run(board, Math.min(depth, GUESS_DEPTH), Integer.MIN_VALUE, Integer.MAX_VALUE, guess);
+        if (_search.stopped()) {
+            return;
+        }
+        for (int n = 0; n < count; n += 1) {
+            if (replies[n] == guess.move()) {
+                replies[n] = replies[0];
+                replies[0] = guess.move();
+            }
+        }
+        int[] reached = new int[count];
+        boolean deeper = true;
+        for (int d = 1; d <= depth && deeper && !_search.stopped(); d += 1) {
+            deeper = false;
+            for (int n = 0; n < count && !_search.stopped(); n += 1) {
+                if (reached[n] >= d) {
+                    continue;
+                }
+                board.makeMove(replies[n]);
+                int left = board.cells() - board.historySize();
+                if (board.isGameOver() || (_book != null && _book.probe(board) != null)) {
+                    reached[n] = Integer.MAX_VALUE;
+                } else {
+                    SearchResult result = new SearchResult(board.getCurrPlayer() != O);
+                    _search.table().newSearch();
+                    _search.run(board, d, Integer.MIN_VALUE, Integer.MAX_VALUE, result);
+                    if (!_search.stopped()) {
+                        boolean settled = d >= left || result.score() == Integer.MAX_VALUE
+                            || result.score() == Integer.MIN_VALUE;
+                        reached[n] = settled ? Integer.MAX_VALUE : d;
+                        deeper |= !settled;
+                        _pondered.put(board.hash(), new Move(result.move(), result.score(), result.stats()));
+                        _ponderedDepths.put(board.hash(), reached[n]);
+                    }
+                }
+                board.unmakeMove();
+            }
+        }
+    }
+
+    /** Forgets everything learnt in earlier games.*/
+    synchronized void newGame() {
+        stopPondering();
+        _pondered.clear();
+        _ponderedDepths.clear();
+        _timedDepth = 0;
+        if (_search != null) {
+            _search.table().clear();
+        }
+    }
+
+    /** Returns the search score matching a PerfectPlay RESULT.*/
+    private static int tablebaseScore(int result) {
+        if (result == PerfectPlay.X_WINS) {
+            return Integer.MAX_VALUE;
+        } else if (result == PerfectPlay.O_WINS) {
+            return Integer.MIN_VALUE;
+        }
+        return 0;
+    }
+
+    /** Opening moves played without searching, or null.*/
+    private final OpeningBook _book;
+
+    /** Search run on the calling thread, or null if using MCTS.*/
+    private final Search _search;
+
+    /** Parallel searcher used instead of _search, or null.*/
+    private final ParallelSearch _parallel;
+
+    /** Perfect-play table consulted before searching, or null.*/
+    private final PerfectPlay _tablebase;
+
+    /** Monte Carlo searcher used instead of alpha-beta, or null.*/
+    private final Mcts _mcts;
+
+    /** Search for wins by threats, run first on boards of more than
+     *  Lines.SPARSE_CELLS squares, and its node and threat limits.*/
+    private final ThreatSearch _threats = new ThreatSearch(THREAT_NODES, THREAT_DEPTH, true);
+    private static final long THREAT_NODES = 5_000;
+    private static final int THREAT_DEPTH = 10;
+
+    /** Depth of the shallow search that guesses the opponent's reply.*/
+    private static final int GUESS_DEPTH = 2;
+
+    /** Pondering thread, or null if not pondering.*/
+    private Thread _ponderer;
+
+    /** Moves found by pondering, keyed by the hash of the position after
+     *  the opponent's reply, and the depth each was searched to, or
+     *  Integer.MAX_VALUE if searching deeper would not change it.*/
+    private final Map<Long, Move> _pondered = new HashMap<>();
+    private final Map<Long, Integer> _ponderedDepths = new HashMap<>();
+
+    /** Deepest depth finished by the last search under a time limit, the
+     *  depth a pondered move must have been searched to for such a search.*/
+    private int _timedDepth;
+
+    /** See bestSoFar.*/
+    private volatile Move _bestSoFar;
+}
@@ -0,0 +1,219 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/** Totals over every move chosen by every Engine in the process, readable
+ *  through JMX (e.g. with jconsole) once register() has been called, and an
+ *  optional trace with one line per move.
+ *
+ *  Engines add to the totals once per move, from the SearchStats their
+ *  searches counted in plain fields, so the search itself pays nothing.
+ *  The totals are LongAdders, which spread concurrent additions over
+ *  separate cells, so engines on many threads do not contend for them.
+ *
+ *  Trace lines are JSON objects, e.g.
+ *  <pre>
+ *  {"ply":2,"player":"X","move":"2,2","source":"search","score":12,"nodes":301,
+ *   "leaves":205,"cutoffs":41,"probes":96,"hits":17,"depth":3,"micros":412}
+ *  </pre> */
+final class EngineMetrics implements EngineMetricsMBean {
+
+    /** Where a move came from.*/
+    enum Source {
+        BOOK, TABLEBASE, THREAT, SEARCH, PONDER, MCTS
+    }
+
+    /** The totals every Engine reports into.*/
+    static final EngineMetrics GLOBAL = new EngineMetrics();
+
+    /** JMX name GLOBAL is registered under.*/
+    static final String NAME = "game:type=EngineMetrics";
+
+    /** Adds MOVE, chosen from SOURCE for the player to move in BOARD, to
+     *  the totals, and traces it if tracing is on. BOARD is the position
+     *  before MOVE is played.*/
+    void record(Board board, Move move, Source source) {
+        SearchStats stats = move.stats();
+        _moves.increment();
+        if (source == Source.BOOK) {
+            _bookMoves.increment();
+        } else if (source == Source.TABLEBASE) {
+            _tablebaseMoves.increment();
+        } else if (source == Source.THREAT) {
+            _threatMoves.increment();
+        } else if (source == Source.PONDER) {
+            _ponderMoves.increment();
+        } else if (source == Source.MCTS) {
+            _mctsMoves.increment();
+        }
+        _nodes.add(stats.nodes);
+        _leaves.add(stats.leaves);
+        _cutoffs.add(stats.cutoffs);
+        _probes.add(stats.probes);
+        _hits.add(stats.hits);
+        _nanos.add(stats.nanos);
+        _depth.accumulate(stats.depth);
+        Writer trace = _trace;
+        if (trace != null) {
+            trace(trace, board, move, source, stats);
+        }
+    }
+
+    /** Writes the trace line for MOVE to TRACE.*/
+    private static void trace(Writer trace, Board board, Move move, Source source, SearchStats stats) {
+        String line = String.format("{\"ply\":%d,\"player\":\"%s\",\"move\":\"%s\",\"source\":\"%s\","
+                                    + "\"score\":%d,\"nodes\":%d,\"leaves\":%d,\"cutoffs\":%d,"
+                                    + "\"probes\":%d,\"hits\":%d,\"depth\":%d,\"micros\":%d}%n",
+                                    board.historySize(), board.getCurrPlayer(), move.name(board),
+                                    source.name().toLowerCase(), move.score(), stats.nodes,
+                                    stats.leaves, stats.cutoffs, stats.probes, stats.hits,
+                                    stats.depth, stats.nanos / 1000);
+        try {
+            synchronized (trace) {
+                trace.write(line);
+                trace.flush();
+            }
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /** Starts writing a trace line for every move to OUT, or stops if OUT is null.*/
+    void trace(Writer out) {
+        _trace = out;
+    }
+
+    /** Makes these totals visible through JMX under NAME. Does nothing if
+     *  they already are.*/
+    synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(NAME);
+        if (!server.isRegistered(name)) {
+            server.registerMBean(this, name);
+        }
+    }
+
+    @Override
+    public long getMoves() {
+        return _moves.sum();
+    }
+
+    @Override
+    public long getBookMoves() {
+        return _bookMoves.sum();
+    }
+
+    @Override
+    public long getTablebaseMoves() {
+        return _tablebaseMoves.sum();
+    }
+
+    @Override
+    public long getThreatMoves() {
+        return _threatMoves.sum();
+    }
+
+    @Override
+    public long getPonderMoves() {
+        return _ponderMoves.sum();
+    }
+
+    @Override
+    public long getMctsMoves() {
+        return _mctsMoves.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return _nodes.sum();
+    }
+
+    @Override
+    public long getLeaves() {
+        return _leaves.sum();
+    }
+
+    @Override
+    public long getCutoffs() {
+        return _cutoffs.sum();
+    }
+
+    @Override
+    public long getTableProbes() {
+        return _probes.sum();
+    }
+
+    @Override
+    public long getTableHits() {
+        return _hits.sum();
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return _depth.get();
+    }
+
+    @Override
+    public long getMillis() {
+        return _nanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getNodesPerSecond() {
+        long nanos = _nanos.sum();
+        return (nanos == 0) ? 0 : (long) (_nodes.sum() * 1e9 / nanos);
+    }
+
+    @Override
+    public double getCutoffRate() {
+        long interior = _nodes.sum() - _leaves.sum();
+        return (interior <= 0) ? 0 : (double) _cutoffs.sum() / interior;
+    }
+
+    @Override
+    public double getTableHitRate() {
+        long probes = _probes.sum();
+        return (probes == 0) ? 0 : (double) _hits.sum() / probes;
+    }
+
+    @Override
+    public void reset() {
+        _moves.reset();
+        _bookMoves.reset();
+        _tablebaseMoves.reset();
+        _threatMoves.reset();
+        _mctsMoves.reset();
+        _ponderMoves.reset();
+        _nodes.reset();
+        _leaves.reset();
+        _cutoffs.reset();
+        _probes.reset();
+        _hits.reset();
+        _nanos.reset();
+        _depth.reset();
+    }
+
+    /** Move counts by source.*/
+    private final LongAdder _moves = new LongAdder(), _bookMoves = new LongAdder(),
+        _tablebaseMoves = new LongAdder(), _threatMoves = new LongAdder(), _ponderMoves = new LongAdder(),
+        _mctsMoves = new LongAdder();
+
+    /** Sums of the SearchStats of every move.*/
+    private final LongAdder _nodes = new LongAdder(), _leaves = new LongAdder(),
+        _cutoffs = new LongAdder(), _probes = new LongAdder(), _hits = new LongAdder(),
+        _nanos = new LongAdder();
+
+    /** Deepest search.*/
+    private final LongAccumulator _depth = new LongAccumulator(Math::max, 0);
+
+    /** Where trace lines go, or null.*/
+    private volatile Writer _trace;
+}
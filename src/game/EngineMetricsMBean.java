@@ -0,0 +1,56 @@
+package game;
+
+/** Management interface of EngineMetrics, as seen through JMX. */
+public interface EngineMetricsMBean {
+
+    /** Moves chosen, by any means.*/
+    long getMoves();
+
+    /** Moves taken from an opening book.*/
+    long getBookMoves();
+
+    /** Moves taken from a tablebase.*/
+    long getTablebaseMoves();
+
+    /** Moves starting a forced win found by threat-space search.*/
+    long getThreatMoves();
+
+    /** Moves found while pondering on the opponent's time.*/
+    long getPonderMoves();
+
+    /** Moves chosen by MCTS.*/
+    long getMctsMoves();
+
+    /** Nodes searched, or MCTS playouts run.*/
+    long getNodes();
+
+    /** Leaves evaluated by alpha-beta search.*/
+    long getLeaves();
+
+    /** Alpha-beta cutoffs.*/
+    long getCutoffs();
+
+    /** Transposition table probes.*/
+    long getTableProbes();
+
+    /** Transposition table probes that found their position.*/
+    long getTableHits();
+
+    /** Deepest ply reached below the root by any search.*/
+    long getMaxDepth();
+
+    /** Time spent choosing moves, in milliseconds.*/
+    long getMillis();
+
+    /** Nodes per second of time spent choosing moves.*/
+    long getNodesPerSecond();
+
+    /** Cutoffs per interior node searched, from 0 to 1.*/
+    double getCutoffRate();
+
+    /** Hits per transposition table probe, from 0 to 1.*/
+    double getTableHitRate();
+
+    /** Sets every count back to zero.*/
+    void reset();
+}
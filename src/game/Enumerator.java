@@ -0,0 +1,316 @@
+package game;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static game.Piece.*;
+
+/** Walks every legal game of an m,n,k board and counts them by ply: the
+ *  distinct positions reached, the same up to rotation and reflection, and
+ *  the games won by X, won by O and drawn. On 3x3 it finds the known
+ *  255,168 games and 5,478 positions (765 up to symmetry), so any change to
+ *  Board can be checked against it, and its positions per second measure
+ *  how fast Board makes and takes back moves.
+ *
+ *  Games are not played out one by one, since there are far too many on
+ *  4x4. Instead the tree is walked a ply at a time. Each ply is a set of
+ *  canonical positions, every rotation and reflection of a position
+ *  standing for all of them, each with the number of move orders that
+ *  reach any of them; the position's children add that number to their
+ *  own canonical positions in the next ply. A game ends at a won or drawn
+ *  position, so the games ending there are its move orders. The
+ *  positions of a ply are expanded in parallel on a ForkJoinPool into a
+ *  ConcurrentHashMap of the next, so memory is bounded by the two widest
+ *  adjacent plies rather than by the tree, about 250,000 positions each on 4x4.
+ *
+ *  A position is keyed by its two bitboards, X's in the low half and O's
+ *  in the high half, seen through whichever symmetry makes the smallest
+ *  key, so that positions match exactly rather than by hash. An
+ *  Enumerator can run any number of times, and close() stops its threads. */
+final class Enumerator implements Closeable {
+
+    /** Counts over the whole tree, by ply.*/
+    static final class Stats {
+
+        /** Creates empty counts for a board with CELLS squares.*/
+        Stats(int cells) {
+            positions = new long[cells + 1];
+            canonical = new long[cells + 1];
+            xWins = new long[cells + 1];
+            oWins = new long[cells + 1];
+            draws = new long[cells + 1];
+        }
+
+        /** Distinct positions after each number of moves, with and
+         *  without rotations and reflections counted separately.*/
+        final long[] positions, canonical;
+
+        /** Games won by X, won by O and drawn, by the ply they end on.*/
+        final long[] xWins, oWins, draws;
+
+        /** Time taken, in nanoseconds.*/
+        long nanos;
+
+        /** Returns the sum of COUNTS.*/
+        private static long total(long[] counts) {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /** Number of distinct positions.*/
+        long positions() {
+            return total(positions);
+        }
+
+        /** Number of distinct positions up to rotation and reflection.*/
+        long canonical() {
+            return total(canonical);
+        }
+
+        /** Number of games.*/
+        long games() {
+            return total(xWins) + total(oWins) + total(draws);
+        }
+
+        /** Distinct positions counted per second, or 0 if no time was recorded.*/
+        long positionsPerSecond() {
+            return (nanos == 0) ? 0 : (long) (positions() * 1e9 / nanos);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format("%4s %12s %10s %14s %14s %14s%n",
+                                                                "ply", "positions", "canonical",
+                                                                "X wins", "O wins", "draws"));
+            for (int ply = 0; ply < positions.length && positions[ply] > 0; ply += 1) {
+                out.append(String.format("%4d %12d %10d %14d %14d %14d%n", ply, positions[ply], canonical[ply],
+                                         xWins[ply], oWins[ply], draws[ply]));
+            }
+            out.append(String.format("%d games: X won %d, O won %d, %d draws; %d positions, %d up to symmetry;"
+                                     + " %.1f s, %d positions/s",
+                                     games(), total(xWins), total(oWins), total(draws), positions(), canonical(),
+                                     nanos / 1e9, positionsPerSecond()));
+            return out.toString();
+        }
+    }
+
+    /** Most squares a board can have: beyond 20 the number of games can
+     *  overflow a long, and the plies would not fit in memory anyway.*/
+    static final int MAX_CELLS = 20;
+
+    /** Sets up enumeration of ROWS x COLS boards needing K in a row, on
+     *  THREADS threads.*/
+    Enumerator(int rows, int cols, int k, int threads) {
+        if (rows * cols > MAX_CELLS) {
+            throw new IllegalArgumentException("Can only enumerate boards of up to " + MAX_CELLS + " squares.");
+        }
+        Lines.forShape(rows, cols, k);
+        _rows = rows;
+        _cols = cols;
+        _k = k;
+        _pool = new ForkJoinPool(threads);
+    }
+
+    /** Walks the whole tree and returns its counts.*/
+    Stats run() {
+        long start = System.nanoTime();
+        Stats stats = new Stats(_rows * _cols);
+        Map<Long, LongAdder> ply = new ConcurrentHashMap<>();
+        LongAdder root = new LongAdder();
+        root.increment();
+        ply.put(0L, root);
+        for (int n = 0; !ply.isEmpty(); n += 1) {
+            long[] keys = new long[ply.size()];
+            long[] orders = new long[keys.length];
+            int at = 0;
+            for (Map.Entry<Long, LongAdder> entry : ply.entrySet()) {
+                keys[at] = entry.getKey();
+                orders[at] = entry.getValue().sum();
+                at += 1;
+            }
+            ply = null; // Only the arrays are needed now; let the map go.
+            Expand expand = new Expand(n, keys, orders, 0, keys.length);
+            _pool.invoke(expand);
+            expand.tally.record(stats, n);
+            ply = expand.next;
+        }
+        stats.nanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    /** Stops the worker threads.*/
+    @Override
+    public void close() {
+        _pool.shutdown();
+    }
+
+    /** Counts for one ply, added to by every task expanding it.*/
+    private static final class Tally {
+        /** Positions, canonical positions, and games won by X, won by O and drawn.*/
+        final LongAdder positions = new LongAdder(), canonical = new LongAdder(),
+            xWins = new LongAdder(), oWins = new LongAdder(), draws = new LongAdder();
+
+        /** Copies these counts into STATS as ply PLY.*/
+        void record(Stats stats, int ply) {
+            stats.positions[ply] = positions.sum();
+            stats.canonical[ply] = canonical.sum();
+            stats.xWins[ply] = xWins.sum();
+            stats.oWins[ply] = oWins.sum();
+            stats.draws[ply] = draws.sum();
+        }
+    }
+
+    /** Expands positions [LO, HI) of one ply, splitting the range in half
+     *  until it is small enough to do on one board.*/
+    private final class Expand extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Expands positions KEYS[LO, HI), reached by ORDERS move orders, after PLY moves.*/
+        Expand(int ply, long[] keys, long[] orders, int lo, int hi) {
+            this(ply, keys, orders, lo, hi, new Tally(), new ConcurrentHashMap<>(2 * keys.length));
+        }
+
+        /** As above, counting into TALLY and adding children to NEXT.*/
+        private Expand(int ply, long[] keys, long[] orders, int lo, int hi, Tally tally,
+                       Map<Long, LongAdder> next) {
+            _ply = ply;
+            _keys = keys;
+            _orders = orders;
+            _lo = lo;
+            _hi = hi;
+            this.tally = tally;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > GRAIN) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Expand(_ply, _keys, _orders, _lo, mid, tally, next),
+                          new Expand(_ply, _keys, _orders, mid, _hi, tally, next));
+                return;
+            }
+            Board board = new Board(_rows, _cols, _k);
+            int[] moves = new int[board.cells()];
+            for (int n = _lo; n < _hi; n += 1) {
+                long key = _keys[n];
+                long orders = _orders[n];
+                tally.canonical.increment();
+                tally.positions.add(orbit(board, key & ~(WON | DRAWN)));
+                if ((key & WON) != 0) {
+                    ((_ply % 2 == 1) ? tally.xWins : tally.oWins).add(orders);
+                } else if ((key & DRAWN) != 0) {
+                    tally.draws.add(orders);
+                } else {
+                    expand(board, key, orders, moves);
+                }
+            }
+        }
+
+        /** Sets BOARD to position KEY and adds ORDERS to each of its
+         *  children in the next ply, using MOVES to generate them. BOARD is
+         *  left empty.*/
+        private void expand(Board board, long key, long orders, int[] moves) {
+            long x = key & HALF;
+            long o = key >>> 32;
+            while (x != 0) {
+                board.makeMove(Long.numberOfTrailingZeros(x));
+                x &= x - 1;
+                if (o != 0) {
+                    board.makeMove(Long.numberOfTrailingZeros(o));
+                    o &= o - 1;
+                }
+            }
+            int count = board.legalMoves(moves, 0);
+            for (int m = 0; m < count; m += 1) {
+                board.makeMove(moves[m]);
+                long child = canonical(board);
+                if (board.getWinner() != null) {
+                    child |= WON;
+                } else if (board.inTie()) {
+                    child |= DRAWN;
+                }
+                next.computeIfAbsent(child, c -> new LongAdder()).add(orders);
+                board.unmakeMove();
+            }
+            while (board.historySize() > 0) {
+                board.unmakeMove();
+            }
+        }
+
+        /** Counts for this ply.*/
+        final Tally tally;
+
+        /** Positions of the next ply, with the move orders reaching each.*/
+        final Map<Long, LongAdder> next;
+
+        /** Number of moves played in this ply's positions.*/
+        private final int _ply;
+
+        /** This ply's positions and the move orders reaching each.*/
+        private final long[] _keys, _orders;
+
+        /** Range of positions this task expands.*/
+        private final int _lo, _hi;
+    }
+
+    /** Returns the key of BOARD's position seen through symmetry S.*/
+    private static long key(Board board, int s) {
+        long key = 0;
+        for (long x = board.bitboard(X); x != 0; x &= x - 1) {
+            key |= 1L << board.transform(s, Long.numberOfTrailingZeros(x));
+        }
+        for (long o = board.bitboard(O); o != 0; o &= o - 1) {
+            key |= 1L << (32 + board.transform(s, Long.numberOfTrailingZeros(o)));
+        }
+        return key;
+    }
+
+    /** Returns the smallest key of BOARD's position under any symmetry.*/
+    private static long canonical(Board board) {
+        long best = key(board, 0);
+        for (int s = 1; s < board.symmetries(); s += 1) {
+            best = Math.min(best, key(board, s));
+        }
+        return best;
+    }
+
+    /** Returns how many distinct positions are rotations or reflections of
+     *  position KEY, which must be canonical: the number of symmetries
+     *  divided by the number that leave it as it is. BOARD gives the shape.*/
+    private static int orbit(Board board, long key) {
+        int fixed = 0;
+        for (int s = 0; s < board.symmetries(); s += 1) {
+            long image = 0;
+            for (long bits = key; bits != 0; bits &= bits - 1) {
+                int bit = Long.numberOfTrailingZeros(bits);
+                image |= 1L << ((bit & ~31) + board.transform(s, bit & 31));
+            }
+            fixed += (image == key) ? 1 : 0;
+        }
+        return board.symmetries() / fixed;
+    }
+
+    /** Flags on the key of a won or drawn position, which is not expanded.*/
+    private static final long WON = 1L << 63, DRAWN = 1L << 62;
+
+    /** Mask of the low half of a key, X's squares.*/
+    private static final long HALF = 0xFFFFFFFFL;
+
+    /** Most positions one task expands without splitting.*/
+    private static final int GRAIN = 256;
+
+    /** Board shape.*/
+    private final int _rows, _cols, _k;
+
+    /** Worker threads.*/
+    private final ForkJoinPool _pool;
+}
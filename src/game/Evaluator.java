@@ -0,0 +1,62 @@
+package game;
+
+import static game.Piece.*;
+
+/** Scores positions from the line counts Board keeps up to date on every
+ *  move, so an evaluation reads k numbers per player, allocates nothing,
+ *  and works for any board and any k.
+ *
+ *  A line is open for a player when the opponent has no piece on it. Each
+ *  open line is worth more the more of the player's pieces it holds. On
+ *  top of that, a player to move with an open line one piece short of k
+ *  wins on the next move, and a player with two such lines missing
+ *  different squares (a double threat, usually from a fork) can only be
+ *  stopped on one of them. */
+final class Evaluator {
+
+    /** Score of a position the player to move wins on the next move.*/
+    static final int THREAT = Integer.MAX_VALUE / 2;
+
+    /** Score of a position where the player not to move has a double threat.*/
+    static final int DOUBLE_THREAT = Integer.MAX_VALUE / 4;
+
+    /** Highest power of two an open line is worth, so sums cannot overflow.*/
+    private static final int MAX_SHIFT = 20;
+
+    private Evaluator() {
+    }
+
+    /** Returns BOARD's score, positive if it favours X and negative if it
+     *  favours O. Won positions score Integer.MAX_VALUE or MIN_VALUE and
+     *  ties 0.*/
+    static int evaluate(Board board) {
+        Piece winner = board.getWinner();
+        if (winner == X) {
+            return Integer.MAX_VALUE;
+        } else if (winner == O) {
+            return Integer.MIN_VALUE;
+        } else if (board.inTie()) {
+            return 0;
+        }
+
+        int k = board.k();
+        Piece mover = board.getCurrPlayer();
+        Piece other = (mover == X) ? O : X;
+        int sign = (mover == X) ? 1 : -1;
+        if (k > 1) {
+            if (board.openLines(mover, k - 1) > 0) {
+                return sign * THREAT;
+            }
+            if (board.completionSquares(other) > 1) {
+                return -sign * DOUBLE_THREAT;
+            }
+        }
+
+        int score = sign;
+        for (int j = 1; j < k; j += 1) {
+            int weight = 1 << Math.min(3 * (j - 1), MAX_SHIFT);
+            score += weight * (board.openLines(X, j) - board.openLines(O, j));
+        }
+        return score;
+    }
+}
@@ -0,0 +1,72 @@
+package game;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** Compact binary format for recorded games. A file starts with an 8-byte
+ *  header, the magic number and the format version, followed by one record
+ *  per game:
+ *  <pre>
+ *  rows, cols, k     one unsigned byte each
+ *  count             number of moves, an unsigned short
+ *  moves             count squares, one unsigned byte each (numbered as in Board)
+ *  </pre>
+ *  all big-endian. A 3x3 game takes at most 14 bytes, against about 40 as
+ *  a text script. Boards of more than 256 squares cannot be logged. */
+final class GameLog {
+
+    /** File header: magic number and format version.*/
+    static final int MAGIC = 0x5454544C, VERSION = 1, HEADER = 8;
+
+    /** Bytes in a record before its moves.*/
+    static final int RECORD_HEADER = 5;
+
+    /** Largest board, in squares, whose moves fit in a byte.*/
+    static final int MAX_CELLS = 256;
+
+    /** Something finished games can be handed to, such as a log file or an
+     *  opening book being grown.*/
+    interface Sink {
+        /** Takes a game on a ROWS x COLS board needing K in a row, whose
+         *  moves are the first COUNT squares of MOVES.*/
+        void write(int rows, int cols, int k, int[] moves, int count) throws IOException;
+    }
+
+    /** Appends games to a new log file. Safe for several threads to share;
+     *  each game is written whole.*/
+    static final class Writer implements Sink, Closeable {
+
+        /** Creates FILE, replacing any existing file, and writes the header.*/
+        Writer(Path file) throws IOException {
+            _out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+            _out.writeInt(MAGIC);
+            _out.writeInt(VERSION);
+        }
+
+        @Override
+        public synchronized void write(int rows, int cols, int k, int[] moves, int count) throws IOException {
+            if (rows > 255 || cols > 255 || rows * cols > MAX_CELLS) {
+                throw new IllegalArgumentException("Board too big for a game log.");
+            }
+            _out.writeByte(rows);
+            _out.writeByte(cols);
+            _out.writeByte(k);
+            _out.writeShort(count);
+            for (int n = 0; n < count; n += 1) {
+                _out.writeByte(moves[n]);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            _out.close();
+        }
+
+        /** Buffered output.*/
+        private final DataOutputStream _out;
+    }
+}
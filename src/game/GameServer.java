@@ -0,0 +1,403 @@
+package game;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/** Plays any number of games against the engine at once over TCP on
+ *  localhost. One thread owns every connection through a Selector, so an
+ *  idle session costs a Board and two small buffers and no thread. Engine
+ *  moves run on a fixed pool of workers, each with its own Engine, behind
+ *  a bounded queue; when the queue is full the client is told to retry.
+ *
+ *  The protocol is one command per line, answered with one or more lines:
+ *  <pre>
+ *  row,col          play a move, e.g. 2,2, and let the engine answer it
+ *  go               let the engine move for the player to move
+ *  new [R C [K]]    start a new game, 3x3 by default, at most MAX_SIDE a side
+ *  quit             close the session
+ *  </pre>
+ *  Replies are "ok", "move row,col" for an engine move, "over X", "over O"
+ *  or "over tie" when the game ends, "bye", and "error message". */
+final class GameServer implements Closeable {
+
+    /** Most rows or columns a client may ask for, so that no client can
+     *  make the server build line tables big enough to exhaust memory.*/
+    static final int MAX_SIDE = 32;
+
+    /** Longest command accepted, in bytes, including the newline.*/
+    private static final int MAX_LINE = 64;
+
+    /** Most replies held for a client that is not reading before it is dropped, in bytes.*/
+    private static final int MAX_OUTPUT = 1 << 16;
+
+    /** Engine moves that may wait for a worker before more are refused.*/
+    private static final int QUEUE = 4096;
+
+    /** Listens on localhost PORT (0 for any free port) and answers with
+     *  WORKERS engine threads, each searching within LIMITS.*/
+    GameServer(int port, int workers, SearchLimits limits) throws IOException {
+        _limits = limits;
+        _selector = Selector.open();
+        _server = ServerSocketChannel.open();
+        _server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        _server.configureBlocking(false);
+        _server.register(_selector, SelectionKey.OP_ACCEPT);
+        _workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<>(QUEUE), runnable -> {
+                Thread thread = new Thread(runnable, "engine");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /** Port the server is listening on.*/
+    int port() {
+        return _server.socket().getLocalPort();
+    }
+
+    /** Number of open sessions.*/
+    int sessions() {
+        return _sessions;
+    }
+
+    /** Serves clients on the calling thread until close() is called, then
+     *  closes every session.*/
+    void serve() throws IOException {
+        try {
+            while (_running) {
+                _selector.select();
+                Runnable done;
+                while ((done = _completed.poll()) != null) {
+                    done.run();
+                }
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Session session = (Session) key.attachment();
+                    if (key.isWritable()) {
+                        session.flush();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        session.read();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : _selector.keys()) {
+                key.channel().close();
+            }
+            _selector.close();
+            _workers.shutdownNow();
+            _sessions = 0;
+        }
+    }
+
+    /** Stops serve(). May be called from any thread.*/
+    @Override
+    public void close() {
+        _running = false;
+        _selector.wakeup();
+    }
+
+    /** Accepts every pending connection. If the process is out of file
+     *  descriptors, the rest wait in the backlog until sessions close.*/
+    private void accept() {
+        while (true) {
+            SocketChannel channel = null;
+            try {
+                channel = _server.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(_selector, SelectionKey.OP_READ);
+                key.attach(new Session(channel, key));
+                _sessions += 1;
+            } catch (IOException error) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Already failed; nothing left to release.
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /** One client and its game. Only the selector thread touches a session,
+     *  except for its board while a worker is choosing a move on it.*/
+    private final class Session {
+
+        Session(SocketChannel channel, SelectionKey key) {
+            _channel = channel;
+            _key = key;
+        }
+
+        /** Reads what the client has sent and runs any complete commands.*/
+        void read() {
+            int count;
+            try {
+                count = _channel.read(_in);
+            } catch (IOException error) {
+                count = -1;
+            }
+            if (count < 0) {
+                close();
+                return;
+            }
+            process();
+        }
+
+        /** Runs each complete line in the input buffer, pausing while the
+         *  engine is thinking, then sends the replies.*/
+        private void process() {
+            _in.flip();
+            byte[] bytes = _in.array();
+            while (!_thinking && !_closing) {
+                int start = _in.position();
+                int end = start;
+                while (end < _in.limit() && bytes[end] != '\n') {
+                    end += 1;
+                }
+                if (end == _in.limit()) {
+                    break;
+                }
+                _in.position(end + 1);
+                command(new String(bytes, start, end - start, StandardCharsets.US_ASCII).trim());
+            }
+            _in.compact();
+            if (!_in.hasRemaining() && !_thinking) {
+                reply("error Line too long.");
+                _closing = true;
+            }
+            flush();
+        }
+
+        /** Runs one command.*/
+        private void command(String line) {
+            if (line.isEmpty()) {
+                return;
+            }
+            if (line.equals("quit")) {
+                reply("bye");
+                _closing = true;
+            } else if (line.equals("new") || line.startsWith("new ")) {
+                newGame(line.substring(3).trim());
+            } else if (_board.isGameOver()) {
+                reply("error The game is over.");
+            } else if (line.equals("go")) {
+                think();
+            } else {
+                try {
+                    _board.makeMove(line);
+                } catch (IllegalArgumentException error) {
+                    reply("error " + error.getMessage());
+                    return;
+                }
+                if (_board.isGameOver()) {
+                    reply(result());
+                } else {
+                    think();
+                }
+            }
+        }
+
+        /** Starts a new game on the board described by ARGS: rows, columns
+         *  and k, as for Main.*/
+        private void newGame(String args) {
+            try {
+                if (args.isEmpty()) {
+                    _board = new Board();
+                } else {
+                    String[] parts = args.split("\\s+");
+                    int rows = Integer.parseInt(parts[0]);
+                    int cols = Integer.parseInt(parts[1]);
+                    int k = (parts.length > 2) ? Integer.parseInt(parts[2]) : Math.min(rows, cols);
+                    if (rows > MAX_SIDE || cols > MAX_SIDE) {
+                        reply("error Boards may have at most " + MAX_SIDE + " rows and columns.");
+                        return;
+                    }
+                    _board = new Board(rows, cols, k);
+                }
+                reply("ok");
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException error) {
+                reply("error Expected new [rows cols [k]].");
+            }
+        }
+
+        /** Hands the board to a worker to choose the engine's move. Commands
+         *  wait in the input buffer until the move comes back.*/
+        private void think() {
+            Board board = _board;
+            _thinking = true;
+            try {
+                _workers.execute(() -> {
+                    Move move = null;
+                    try {
+                        move = _engines.get().bestMove(board, _limits);
+                    } finally {
+                        Move chosen = move;
+                        _completed.add(() -> moved(chosen));
+                        _selector.wakeup();
+                    }
+                });
+            } catch (RejectedExecutionException error) {
+                _thinking = false;
+                reply("error Server busy, try again.");
+            }
+        }
+
+        /** Plays the engine's MOVE, on the selector thread, and carries on
+         *  with any commands that arrived meanwhile. MOVE is null if the
+         *  engine failed.*/
+        private void moved(Move move) {
+            _thinking = false;
+            if (!_key.isValid()) {
+                return;
+            }
+            if (move == null) {
+                reply("error The engine failed.");
+            } else {
+                _board.makeMove(move.square());
+                reply("move " + move.name(_board));
+                if (_board.isGameOver()) {
+                    reply(result());
+                }
+            }
+            process();
+        }
+
+        /** Returns the "over" reply for a finished game.*/
+        private String result() {
+            return (_board.getWinner() == null) ? "over tie" : "over " + _board.getWinner().name();
+        }
+
+        /** Queues LINE to be sent, dropping the client if too much is queued.*/
+        private void reply(String line) {
+            int needed = line.length() + 1;
+            if (_out.remaining() < needed) {
+                if (_out.position() + needed > MAX_OUTPUT) {
+                    _closing = true;
+                    _out.clear();
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_OUTPUT, 2 * (_out.position() + needed)));
+                _out.flip();
+                bigger.put(_out);
+                _out = bigger;
+            }
+            for (int i = 0; i < line.length(); i += 1) {
+                _out.put((byte) line.charAt(i));
+            }
+            _out.put((byte) '\n');
+        }
+
+        /** Sends as much queued output as the socket takes, asks to be told
+         *  when it can take more, and closes the session once a closing
+         *  session has nothing left to send. Input is not read while the
+         *  engine is thinking, so a client cannot queue unlimited commands.*/
+        void flush() {
+            if (_out.position() > 0) {
+                _out.flip();
+                try {
+                    _channel.write(_out);
+                } catch (IOException error) {
+                    close();
+                    return;
+                }
+                _out.compact();
+            }
+            if (_out.position() == 0 && _closing) {
+                close();
+                return;
+            }
+            int ops = (_thinking || _closing) ? 0 : SelectionKey.OP_READ;
+            if (_out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            _key.interestOps(ops);
+        }
+
+        /** Drops the connection. A move still being chosen is discarded when it arrives.*/
+        private void close() {
+            if (!_key.isValid()) {
+                return;
+            }
+            _key.cancel();
+            try {
+                _channel.close();
+            } catch (IOException error) {
+                // Nothing more to do for a connection that is already gone.
+            }
+            _sessions -= 1;
+        }
+
+        /** Connection and its registration with the selector.*/
+        private final SocketChannel _channel;
+        private final SelectionKey _key;
+
+        /** Unprocessed input, in write mode.*/
+        private final ByteBuffer _in = ByteBuffer.allocate(MAX_LINE);
+
+        /** Replies not yet sent, in write mode. Grows up to MAX_OUTPUT.*/
+        private ByteBuffer _out = ByteBuffer.allocate(64);
+
+        /** The game being played.*/
+        private Board _board = new Board();
+
+        /** True while a worker is choosing a move on _board.*/
+        private boolean _thinking;
+
+        /** True once the session should close after sending its replies.*/
+        private boolean _closing;
+    }
+
+    /** One engine per worker thread, shared by every session the worker serves.*/
+    private final ThreadLocal<Engine> _engines = ThreadLocal.withInitial(Engine::new);
+
+    /** Limits on each engine move.*/
+    private final SearchLimits _limits;
+
+    /** Selector owning every connection.*/
+    private final Selector _selector;
+
+    /** Listening socket.*/
+    private final ServerSocketChannel _server;
+
+    /** Engine worker pool.*/
+    private final ThreadPoolExecutor _workers;
+
+    /** Engine moves finished by workers, waiting to be played on the selector thread.*/
+    private final Queue<Runnable> _completed = new ConcurrentLinkedQueue<>();
+
+    /** False once close() has been called.*/
+    private volatile boolean _running = true;
+
+    /** Number of open sessions, updated only on the selector thread.*/
+    private volatile int _sessions;
+}
@@ -0,0 +1,69 @@
+package game;
+
+import java.util.Arrays;
+
+/** A TranspositionTable in two arrays on the Java heap, one of keys and one
+ *  of packed entries, so the table is a handful of objects however big it
+ *  is. Not thread-safe; give each search thread its own, or share an
+ *  OffHeapTable. */
+final class HeapTable implements TranspositionTable {
+
+    /** Creates a table with room for at least ENTRIES positions. The size is
+     *  rounded up to a power of two.*/
+    HeapTable(int entries) {
+        if (entries < 1) {
+            throw new IllegalArgumentException("Table must hold at least one entry.");
+        }
+        int capacity = Integer.highestOneBit(entries);
+        if (capacity < entries) {
+            capacity <<= 1;
+        }
+        _mask = capacity - 1;
+        _keys = new long[capacity];
+        _entries = new long[capacity];
+    }
+
+    @Override
+    public void newSearch() {
+        _age = (_age == MAX_AGE) ? 1 : _age + 1;
+    }
+
+    @Override
+    public long probe(long key) {
+        int slot = (int) key & _mask;
+        if (_entries[slot] != MISS && _keys[slot] == key) {
+            return _entries[slot];
+        }
+        return MISS;
+    }
+
+    @Override
+    public void store(long key, int score, int depth, byte bound, int move) {
+        int slot = (int) key & _mask;
+        long old = _entries[slot];
+        if (old == MISS || _keys[slot] == key || TranspositionTable.age(old) != _age
+            || depth >= TranspositionTable.depth(old)) {
+            _keys[slot] = key;
+            _entries[slot] = TranspositionTable.pack(score, depth, bound, move, _age);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(_entries, MISS);
+    }
+
+    @Override
+    public long capacity() {
+        return _mask + 1;
+    }
+
+    /** Slot index mask; capacity is a power of two.*/
+    private final int _mask;
+
+    /** Key and packed entry of each slot.*/
+    private final long[] _keys, _entries;
+
+    /** Current search generation, from 1 to MAX_AGE.*/
+    private int _age = 1;
+}
@@ -0,0 +1,306 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Precomputed winning lines for a rows x cols board with k in a row to
+ *  win, stored as bitmasks, along with the board's symmetries and its
+ *  Zobrist keys. Squares are numbered col * rows + row, which matches the
+ *  [column][row] indexing used by Board. Square i lives in word i / 64
+ *  of a bitboard at bit i % 64. */
+final class Lines {
+
+    /** Most symmetries a board can have: the four rotations of a square,
+     *  each with and without a reflection. Symmetry 0 is the identity.*/
+    static final int SYMMETRIES = 8;
+
+    /** Boards with more squares than this are sparse: search only
+     *  considers squares near pieces already played. See Board.candidateMoves.*/
+    static final int SPARSE_CELLS = 64;
+
+    /** How far, in rows or columns, a candidate move may be from a piece.*/
+    static final int RADIUS = 2;
+
+    /** Zobrist key XORed into a hash when O is to move.*/
+    static final long SIDE = 0x5851F42D4C957F2DL;
+
+    /**Line tables already built, keyed by "rows x cols / k".*/
+    private static final Map<String, Lines> CACHE = new ConcurrentHashMap<>();
+
+    /**Returns the (shared, immutable) line table for a size x size board
+     * where a whole row, column or diagonal wins.*/
+    static Lines forSize(int size) {
+        return forShape(size, size, size);
+    }
+
+    /**Returns the (shared, immutable) line table for a ROWS x COLS board
+     * where K in a row wins.*/
+    static Lines forShape(int rows, int cols, int k) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("Board dimensions must be positive.");
+        }
+        if (k < 1 || k > Math.max(rows, cols)) {
+            throw new IllegalArgumentException("k must be between 1 and the longer side of the board.");
+        }
+        return CACHE.computeIfAbsent(rows + "x" + cols + "/" + k, key -> new Lines(rows, cols, k));
+    }
+
+    /** Number of rows on the board.*/
+    final int rows;
+
+    /** Number of columns on the board.*/
+    final int cols;
+
+    /** Number in a row needed to win.*/
+    final int k;
+
+    /** Number of squares on the board.*/
+    final int cells;
+
+    /** Number of 64-bit words in a bitboard of this size.*/
+    final int words;
+
+    /** Number of winning lines.*/
+    final int count;
+
+    /** Number of symmetries of this board: 8 if it is square, else 4.*/
+    final int symmetries;
+
+    /** True if the board has more than SPARSE_CELLS squares.*/
+    final boolean sparse;
+
+    /** Line masks, flattened. Line l occupies words [l * words, (l + 1) * words).*/
+    private final long[] _masks;
+
+    /** The k squares of each line.*/
+    private final int[][] _squares;
+
+    /** For each square, the lines passing through it.*/
+    private final int[][] _through;
+
+    /** _symmetry[s][i] is the square that square i is sent to by symmetry s.*/
+    private final int[][] _symmetry;
+
+    /** _inverse[s][j] is the square that symmetry s sends to square j.*/
+    private final int[][] _inverse;
+
+    /** Zobrist keys, indexed by Piece ordinal * cells + square. Seeded
+     *  from the whole shape, k included, so boards of different shapes can
+     *  share a transposition table.*/
+    private final long[] _zobrist;
+
+    /** For each square of a sparse board, the other squares within RADIUS
+     *  rows and columns of it; null on other boards.*/
+    private final int[][] _neighbours;
+
+    /**Builds every horizontal, vertical and diagonal run of K squares on a
+     * ROWS x COLS board.*/
+    private Lines(int rows, int cols, int k) {
+        this.rows = rows;
+        this.cols = cols;
+        this.k = k;
+        this.cells = rows * cols;
+        this.words = (cells + 63) >>> 6;
+
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        List<int[]> lines = new ArrayList<>();
+        for (int[] dir : directions) {
+            for (int col = 0; col < cols; col += 1) {
+                for (int row = 0; row < rows; row += 1) {
+                    int endCol = col + dir[0] * (k - 1);
+                    int endRow = row + dir[1] * (k - 1);
+                    if (endCol >= cols || endRow < 0 || endRow >= rows) {
+                        continue;
+                    }
+                    int[] line = new int[k];
+                    for (int j = 0; j < k; j += 1) {
+                        line[j] = index(col + dir[0] * j, row + dir[1] * j);
+                    }
+                    lines.add(line);
+                }
+            }
+        }
+
+        count = lines.size();
+        _squares = lines.toArray(new int[count][]);
+        _masks = new long[count * words];
+        int[] through = new int[cells];
+        for (int l = 0; l < count; l += 1) {
+            for (int i : _squares[l]) {
+                _masks[l * words + (i >>> 6)] |= 1L << i;
+                through[i] += 1;
+            }
+        }
+        _through = new int[cells][];
+        for (int i = 0; i < cells; i += 1) {
+            _through[i] = new int[through[i]];
+            through[i] = 0;
+        }
+        for (int l = 0; l < count; l += 1) {
+            for (int i : _squares[l]) {
+                _through[i][through[i]++] = l;
+            }
+        }
+
+        symmetries = (rows == cols) ? SYMMETRIES : SYMMETRIES / 2;
+        _symmetry = new int[symmetries][cells];
+        _inverse = new int[symmetries][cells];
+        int lastCol = cols - 1;
+        int lastRow = rows - 1;
+        for (int col = 0; col < cols; col += 1) {
+            for (int row = 0; row < rows; row += 1) {
+                int i = index(col, row);
+                int[] images;
+                if (symmetries == SYMMETRIES) {
+                    images = new int[] {
+                        i, index(row, lastCol - col), index(lastCol - col, lastRow - row), index(lastRow - row, col),
+                        index(lastCol - col, row), index(col, lastRow - row), index(row, col),
+                        index(lastRow - row, lastCol - col)
+                    };
+                } else {
+                    images = new int[] {
+                        i, index(lastCol - col, lastRow - row), index(lastCol - col, row), index(col, lastRow - row)
+                    };
+                }
+                for (int s = 0; s < symmetries; s += 1) {
+                    _symmetry[s][i] = images[s];
+                    _inverse[s][images[s]] = i;
+                }
+            }
+        }
+
+        sparse = cells > SPARSE_CELLS;
+        _neighbours = sparse ? new int[cells][] : null;
+        for (int col = 0; sparse && col < cols; col += 1) {
+            for (int row = 0; row < rows; row += 1) {
+                List<Integer> near = new ArrayList<>();
+                for (int c = Math.max(0, col - RADIUS); c <= Math.min(lastCol, col + RADIUS); c += 1) {
+                    for (int r = Math.max(0, row - RADIUS); r <= Math.min(lastRow, row + RADIUS); r += 1) {
+                        if (c != col || r != row) {
+                            near.add(index(c, r));
+                        }
+                    }
+                }
+                _neighbours[index(col, row)] = near.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(0x9E3779B97F4A7C15L ^ ((long) rows << 40 | (long) cols << 20 | k));
+        _zobrist = new long[2 * cells];
+        for (int j = 0; j < _zobrist.length; j += 1) {
+            _zobrist[j] = random.nextLong();
+        }
+    }
+
+    /**Returns the square number of (col, row).*/
+    int index(int col, int row) {
+        return col * rows + row;
+    }
+
+    /**Returns the mask of bits in word w that are squares on the board.*/
+    long valid(int w) {
+        int used = cells - (w << 6);
+        return (used >= 64) ? -1L : (1L << used) - 1;
+    }
+
+    /**Returns the squares of line l.*/
+    int[] squares(int l) {
+        return _squares[l];
+    }
+
+    /**Returns the lines passing through square i.*/
+    int[] through(int i) {
+        return _through[i];
+    }
+
+    /**Returns the squares within RADIUS rows and columns of square i, on a
+     * sparse board.*/
+    int[] neighbours(int i) {
+        return _neighbours[i];
+    }
+
+    /**Returns the square that symmetry s sends square i to.*/
+    int transform(int s, int i) {
+        return _symmetry[s][i];
+    }
+
+    /**Returns the square that symmetry s sends to square i.*/
+    int untransform(int s, int i) {
+        return _inverse[s][i];
+    }
+
+    /**Returns the Zobrist key of a PLAYER piece sitting on square i.*/
+    long zobrist(int player, int i) {
+        return _zobrist[player * cells + i];
+    }
+
+    /**Sets square i in bitboard BITS.*/
+    static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    /**Clears square i in bitboard BITS.*/
+    static void clear(long[] bits, int i) {
+        bits[i >>> 6] &= ~(1L << i);
+    }
+
+    /**Returns true if square i is set in bitboard BITS.*/
+    static boolean test(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**Returns true if BITS covers every square of at least one line.*/
+    boolean completes(long[] bits) {
+        if (words == 1) {
+            long b = bits[0];
+            for (long mask : _masks) {
+                if ((b & mask) == mask) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int l = 0; l < count; l += 1) {
+            if (covers(bits, l)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**Returns true if BITS covers a line passing through square i. After a
+     * move on i this is the only check needed to spot a new win, and it
+     * costs at most 4k mask tests whatever the size of the board.*/
+    boolean completesThrough(long[] bits, int i) {
+        for (int l : _through[i]) {
+            if (covers(bits, l)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**Returns true if BITS covers line l.*/
+    private boolean covers(long[] bits, int l) {
+        int base = l * words;
+        for (int w = 0; w < words; w += 1) {
+            long mask = _masks[base + w];
+            if ((bits[w] & mask) != mask) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**Returns the number of squares set in BITS.*/
+    static int popCount(long[] bits) {
+        int result = 0;
+        for (long word : bits) {
+            result += Long.bitCount(word);
+        }
+        return result;
+    }
+}
@@ -1,20 +1,35 @@
 package game;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
 import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import javax.management.JMException;
 
-import static game.Board.*;
 import static game.Piece.*;
 
 public class Main {
 
-    /**Starts and manages the computer game.*/
-    private static void playComputerGame(Board board) {
+    /**Starts and manages the computer game, with ENGINE choosing the
+     * machine's moves and the board shown through RENDERER after each move.
+     * With -Dgame.ponder=true, ENGINE ponders while the human thinks.*/
+    private static void playComputerGame(Board board, Engine engine, Renderer renderer) {
         boolean human = true;
+        boolean ponder = Boolean.getBoolean("game.ponder");
+        if (ponder) {
+            engine.ponder(board, limits());
+        }
         while (!board.isGameOver()) {
             if (human) {
                 Scanner input = new Scanner(System.in);
@@ -30,19 +45,24 @@ public class Main {
                 human = false;
             }
             else {
-                findMachineMove(board, 1, Integer.MIN_VALUE, Integer.MAX_VALUE);
-//                System.out.println(machineMove);
-                board.makeMove(machineMove);
+                Move machineMove = engine.bestMove(board, limits());
+                if (Boolean.getBoolean("game.verbose")) {
+                    System.out.println(machineMove);
+                }
+                board.makeMove(machineMove.square());
                 human = true;
+                if (ponder) {
+                    engine.ponder(board, limits());
+                }
             }
-            board.displayBoard();
+            renderer.render(board);
         }
         board.announceWinner();
         System.exit(0);
     }
 
-    /**Starts and manages the auto game.*/
-    private static void playAutoGame(Board board) {
+    /**Starts and manages the auto game, showing the board through RENDERER after each move.*/
+    private static void playAutoGame(Board board, Renderer renderer) {
         boolean isTie = false;
         while (!board.isGameOver()) {
             Scanner input = new Scanner(System.in);
@@ -55,7 +75,7 @@ public class Main {
                 System.out.println("This move is illegal.");
                 continue;
             }
-            board.displayBoard();
+            renderer.render(board);
         }
         board.announceWinner();
         System.exit(0);
@@ -65,24 +85,26 @@ public class Main {
     public static void readFile(File file) throws IOException {
         Scanner sc = new Scanner(file);
         Board testBoard = new Board();
+        Renderer renderer = renderer();
         while (sc.hasNextLine()) {
             if (sc.findInLine("display") != null) {
-                testBoard.displayBoard();
+                renderer.render(testBoard);
                 sc.nextLine();
                 continue;
             }
             if (sc.findInLine("auto") != null) {
-                playAutoGame(testBoard);
+                playAutoGame(testBoard, renderer);
             }
             if (sc.findInLine("comp") != null) {
-                playComputerGame(testBoard);
+                playComputerGame(testBoard, newEngine(testBoard, null), renderer);
             }
             testBoard.makeMove(sc.nextLine());
         }
     }
 
     /** Starts the game.*/
-    public static void main(String[] args) throws IOException {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        instrument();
         if (args[0].matches("([a-z]|[0-9])*.in")) {
             String pathname = "./test/" + args[0];
             File testFile = new File(pathname);
@@ -94,165 +116,301 @@ public class Main {
             }
             System.exit(0);
         }
-        Board board = new Board();
+        Board board;
         switch (args[0]) {
         case "auto":
-            playAutoGame(board);
+            playAutoGame(newBoard(args), renderer());
+            break;
         case "comp":
-            playComputerGame(board);
+            board = newBoard(args);
+            playComputerGame(board, newEngine(board, null), renderer());
+            break;
+        case "perfect":
+            board = newBoard(args);
+            playComputerGame(board, newEngine(board, perfectPlay(board)), renderer());
+            break;
+        case "selfplay":
+            playSelfPlay(newBoard(args));
+            break;
+        case "tablebase":
+            Tablebase.generate(Paths.get(Tablebase.DEFAULT_FILE));
+            break;
+        case "book":
+            buildBook(newBoard(args));
+            break;
+        case "solve":
+            solve(newBoard(args));
+            break;
+        case "enumerate":
+            enumerate(newBoard(args));
+            break;
+        case "server":
+            playServer();
+            break;
+        case "replay":
+            playReplay(Arrays.copyOfRange(args, 1, args.length));
+            break;
+        case "evaluate":
+            evaluate(Arrays.copyOfRange(args, 1, args.length));
+            break;
         default:
-            throw new IllegalArgumentException("Illegal argument. Choose between auto and comp");
+            throw new IllegalArgumentException(
+                "Illegal argument. Choose between auto, comp, perfect, selfplay, tablebase, book, solve, enumerate,"
+                + " server, replay and evaluate");
         }
+        System.exit(0);
     }
 
-    /** Finds and returns the machine's next move. Save the move in saveMove.
-     * X is the maximising player. O is the minimizing player.*/
-    private static int findMachineMove(Board board, int depth, int alpha, int beta) {
-        boolean hasChanged = false;
-        boolean maximising = (board.getCurrPlayer() == O) ? false : true;
-        if (depth == 0 || board.isGameOver()) {
-            return heuristic(board, !maximising);
+    /** Plays engine games on BOARD's shape with no output but the final totals.
+     * Configured with -Dgame.games=N, -Dgame.threads=N (all cores by default),
+     * -Dgame.x and -Dgame.o (random, engine or mcts), the limits read by limits()
+     * and -Dgame.seed=N. -Dgame.ordering=false turns off move ordering, to
+     * measure what it saves, and -Dgame.log=FILE writes every game to a
+     * binary log.*/
+    private static void playSelfPlay(Board board) throws InterruptedException, IOException {
+        SelfPlay.Player x = SelfPlay.Player.valueOf(System.getProperty("game.x", "random").toUpperCase());
+        SelfPlay.Player o = SelfPlay.Player.valueOf(System.getProperty("game.o", "engine").toUpperCase());
+        long games = Long.getLong("game.games", 100000);
+        int threads = Integer.getInteger("game.threads", Runtime.getRuntime().availableProcessors());
+        SelfPlay selfPlay = new SelfPlay(board.rows(), board.cols(), board.k(), x, o,
+                                         limits(),
+                                         !"false".equals(System.getProperty("game.ordering")));
+        String logFile = System.getProperty("game.log");
+        try (GameLog.Writer log = (logFile == null) ? null : new GameLog.Writer(Paths.get(logFile))) {
+            long start = System.nanoTime();
+            SelfPlay.Stats stats = selfPlay.run(games, threads, Long.getLong("game.seed", 1), log);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(stats);
+            System.out.printf("%.1f s, %.0f games per minute%n", seconds, stats.games() * 60 / seconds);
+            EngineMetrics metrics = EngineMetrics.GLOBAL;
+            System.out.printf("%d nodes/s while searching, %.2f cutoffs per node, %.2f table hit rate%n",
+                              metrics.getNodesPerSecond(), metrics.getCutoffRate(), metrics.getTableHitRate());
         }
-        int bestScore = (maximising) ? alpha: beta;
-        List<String> legalMoves = board.legalMoves();
-        for (String move : legalMoves) {
-            Board copy = copyBoard(board);
-            copy.makeMove(move);
-            int score = findMachineMove(copy, depth - 1, alpha, beta);
-            if (maximising) {
-                if (score > bestScore) {
-                    bestScore = score;
-                    machineMove = move;
-                    hasChanged = true;
-                    alpha = Math.max(alpha, score);
-                }
-            } else {
-                if (score < bestScore) {
-                    bestScore = score;
-                    machineMove = move;
-                    hasChanged = true;
-                    beta = Math.min(beta, score);
-                }
-            }
-            if (alpha >= beta) {
-                break;
-            }
-            if (machineMove == null || !hasChanged) {
-                machineMove = legalMoves.get(0);
-                hasChanged = true;
-            }
-        }
-        return bestScore;
     }
 
-    /** Heuristic function.*/
-    private static int heuristic(Board board, boolean maximising) {
-        boolean diagonalCase = false;
-        if (board.isGameOver() || board.getWinner() != null) {
-            if (board.inTie()) {
-                return 0;
-            } else if (maximising) {
-                if (board.getWinner() == O) {
-                    return Integer.MIN_VALUE;
-                }
-                return Integer.MAX_VALUE;
-            } else {
-                if (board.getWinner() == X) {
-                    return Integer.MAX_VALUE;
-                }
-                return Integer.MIN_VALUE;
+    /** Builds or grows the opening book for BOARD's shape, in the file named
+     * by OpeningBook.fileFor. A new book covers -Dgame.plies=N plies (4 by
+     * default); every position it lacks is searched to -Dgame.depth=N (9 by
+     * default). With -Dgame.from=FILE,... only the opening positions of the
+     * games in those scripts or logs are added, e.g. from a self-play log;
+     * otherwise every position within the book's plies is.*/
+    private static void buildBook(Board board) throws IOException, InterruptedException {
+        Path file = OpeningBook.fileFor(board.rows(), board.cols(), board.k());
+        SearchLimits limits = SearchLimits.depth(Integer.getInteger("game.depth", 9));
+        OpeningBook.Builder builder = Files.exists(file)
+            ? new OpeningBook.Builder(OpeningBook.load(file), limits)
+            : new OpeningBook.Builder(board.rows(), board.cols(), board.k(),
+                                      Integer.getInteger("game.plies", 4), limits);
+        long start = System.nanoTime();
+        String from = System.getProperty("game.from");
+        if (from == null) {
+            builder.addAll();
+        } else {
+            List<Path> files = new ArrayList<>();
+            for (String name : from.split(",")) {
+                files.add(Paths.get(name));
             }
+            new Replay(builder).run(files, 1, null);
         }
+        OpeningBook book = builder.build();
+        book.save(file);
+        System.out.printf("%s: %d positions, %.1f s%n", file, book.size(), (System.nanoTime() - start) / 1e9);
+    }
 
-        List<String> legalMoves = board.legalMoves();
-        for (String move : legalMoves) {
-            Board copy = copyBoard(board);
-            copy.makeMove(move);
-            if (copy.isGameOver()) {
-                if (copy.inTie()) {
-                    int a = (maximising) ? 30 : -30;
-                    return a;
-                }
-                if (maximising) {
-                    return Integer.MIN_VALUE;
-                }
-                return Integer.MAX_VALUE;
+    /** Replays the games in PATHS, files or directories of .in scripts and
+     * .games logs (./test by default), and prints a result line per game and
+     * the totals. -Dgame.quiet=true prints only the totals, -Dgame.log=FILE
+     * also writes every valid game to a binary log, and -Dgame.threads=N
+     * replays N files at once (all cores by default).*/
+    private static void playReplay(String[] paths) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        for (String path : (paths.length == 0) ? new String[] {"test"} : paths) {
+            Path file = Paths.get(path);
+            if (!Files.isDirectory(file)) {
+                files.add(file);
+                continue;
             }
-            if (cornerTrick(copy)) {
-                if (maximising) {
-                    return Integer.MIN_VALUE;
-                }
-                return Integer.MAX_VALUE;
-            }
-            if (diagonalTrick(copy)) {
-                if (maximising) {
-                    if (copy.getEdges().contains(X)) {
-                        diagonalCase = true;
-                    }
-                } else {
-                    if (copy.getEdges().contains(O)) {
-                        diagonalCase = true;
-                    }
-                }
+            try (Stream<Path> listing = Files.list(file)) {
+                listing.filter(f -> f.toString().endsWith(".in") || f.toString().endsWith(".games"))
+                    .sorted().forEach(files::add);
             }
         }
-        if (diagonalCase) {
-            if (maximising) {
-                return 100;
-            } else {
-                return -100;
+        int threads = Integer.getInteger("game.threads", Runtime.getRuntime().availableProcessors());
+        String logFile = System.getProperty("game.log");
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+        try (GameLog.Writer log = (logFile == null) ? null : new GameLog.Writer(Paths.get(logFile))) {
+            long start = System.nanoTime();
+            Replay.Stats stats = new Replay(log).run(files, threads, Boolean.getBoolean("game.quiet") ? null : out);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.write(String.format("%s%n%.2f s, %.0f games per second%n", stats, seconds, stats.games() / seconds));
+        }
+        out.flush();
+    }
+
+    /** Scores the positions in the files PATHS, one a line as described in
+     * BatchEvaluator, and prints the position, score and best move of each
+     * in order, then the time taken. Configured with -Dgame.depth=N (4 by
+     * default), -Dgame.threads=N (all cores by default) and -Dgame.table=MB,
+     * the size of the table the threads share (64 by default).*/
+    private static void evaluate(String[] paths) throws IOException {
+        int threads = Integer.getInteger("game.threads", Runtime.getRuntime().availableProcessors());
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.US_ASCII), 1 << 16);
+        try (BatchEvaluator evaluator = new BatchEvaluator(Integer.getInteger("game.depth", 4), threads,
+                                                           Integer.getInteger("game.table", 64))) {
+            long start = System.nanoTime();
+            for (String path : paths) {
+                evaluator.evaluate(Paths.get(path), out);
             }
+            out.write(String.format("%.2f s%n", (System.nanoTime() - start) / 1e9));
         }
+        out.flush();
+    }
+
+    /** Serves games over TCP on localhost until the process is killed.
+     * Configured with -Dgame.port=N (4000 by default), -Dgame.threads=N engine
+     * workers (all cores by default) and the limits read by limits().*/
+    private static void playServer() throws IOException {
+        int threads = Integer.getInteger("game.threads", Runtime.getRuntime().availableProcessors());
+        GameServer server = new GameServer(Integer.getInteger("game.port", 4000), threads,
+                                           limits());
+        System.out.println("Listening on port " + server.port());
+        server.serve();
+    }
 
-        int result = 0;
-        if (board.getBoard()[1][1] == X) {
-            result += 50;
-        } else if (board.getBoard()[1][1] == O) {
-            result -= 50;
+    /** Returns perfect play for BOARD's shape: the tablebase for 3x3, or
+     * else the solver table, which is solved first if it does not exist yet.*/
+    private static PerfectPlay perfectPlay(Board board) throws IOException {
+        if (board.rows() == 3 && board.cols() == 3 && board.k() == 3) {
+            return Tablebase.load(Paths.get(Tablebase.DEFAULT_FILE));
         }
+        Path file = Solver.fileFor(board.rows(), board.cols(), board.k());
+        if (!Files.exists(file)) {
+            solve(board);
+        }
+        return Solver.load(file);
+    }
 
-        if (maximising) {
-            result += 20;
-        } else {
-            result -= 20;
+    /** Proves the result of BOARD's shape from the empty board with the
+     * proof-number Solver and saves its table, which comp and perfect games
+     * then play from, to the file named by Solver.fileFor. The table takes
+     * -Dgame.table=MB (256 by default) and is checkpointed to the same file
+     * every -Dgame.checkpoint=SECONDS (60 by default); if the file exists,
+     * solving resumes from it.*/
+    private static void solve(Board board) throws IOException {
+        Path file = Solver.fileFor(board.rows(), board.cols(), board.k());
+        Solver solver = Files.exists(file) ? Solver.load(file)
+            : new Solver(board.rows(), board.cols(), board.k(), Integer.getInteger("game.table", 256));
+        solver.checkpoint(file, Integer.getInteger("game.checkpoint", 60));
+        long start = System.nanoTime();
+        int result = solver.solve(new Board(board.rows(), board.cols(), board.k()));
+        solver.save(file);
+        String[] names = {"unknown", "X wins", "draw", "O wins"};
+        System.out.printf("%dx%d, %d in a row: %s (%d nodes, %.1f s)%n", board.rows(), board.cols(), board.k(),
+                          names[result], solver.nodes(), (System.nanoTime() - start) / 1e9);
+    }
+
+    /** Counts every game and position of BOARD's shape by ply with the
+     * Enumerator and prints the counts, on -Dgame.threads=N threads (all
+     * cores by default).*/
+    private static void enumerate(Board board) {
+        int threads = Integer.getInteger("game.threads", Runtime.getRuntime().availableProcessors());
+        try (Enumerator enumerator = new Enumerator(board.rows(), board.cols(), board.k(), threads)) {
+            System.out.println(enumerator.run());
         }
+    }
 
-        return result;
+    /** Returns the renderer for interactive games: the console, or nothing
+     * with -Dgame.display=false, e.g. when piping scripts through.*/
+    private static Renderer renderer() {
+        return "false".equals(System.getProperty("game.display")) ? Renderer.NONE : TextRenderer.CONSOLE;
     }
 
-    /**Handles whether the user is trying to use the diagonal trick.*/
-    private static boolean diagonalTrick(Board board) {
-        Piece[][] diagonals = board.getDiag();
-        for (Piece[] arr : diagonals) {
-            if (Arrays.equals(arr,new Piece[] {X, O, X}) || Arrays.equals(arr, new Piece[] {O,X,O})) {
-                return true;
+    /** Sets up engine metrics: -Dgame.jmx=true publishes the totals over JMX
+     * (see EngineMetrics), and -Dgame.trace=FILE writes a line of stats for
+     * every engine move to FILE.*/
+    private static void instrument() throws IOException {
+        if (Boolean.getBoolean("game.jmx")) {
+            try {
+                EngineMetrics.GLOBAL.register();
+            } catch (JMException error) {
+                throw new IllegalStateException("Cannot register the engine metrics.", error);
             }
         }
-        return false;
+        String trace = System.getProperty("game.trace");
+        if (trace != null) {
+            EngineMetrics.GLOBAL.trace(Files.newBufferedWriter(Paths.get(trace), StandardCharsets.UTF_8));
+        }
     }
 
-    /**Returns true if the board is in a corner double trick situation.*/
-    private static boolean cornerTrick(Board board) {
-        Piece[] topLine = board.getTopLine();
-        Piece[] leftLine = board.getLeftLine();
-        Piece[] rightLine = board.getRightLine();
-        Piece[] bottomLine = board.getBottomLine();
-        if (Arrays.equals(topLine, new Piece[] {EMP, X, X}) && Arrays.equals(rightLine, new Piece[] {X, X, EMP})) {
-            return true;
+    /** Returns the board described by ARGS[1..3] - rows, columns and how many
+     * in a row win (by default the shorter side) - or the standard 3x3 board
+     * if they are absent. For example "comp 7 7 5".*/
+    private static Board newBoard(String[] args) {
+        if (args.length < 3) {
+            return new Board();
         }
-        if (Arrays.equals(topLine, new Piece[] {X, X, EMP}) && Arrays.equals(leftLine, new Piece[] {X, X, EMP})) {
-            return true;
+        int rows = Integer.parseInt(args[1]);
+        int cols = Integer.parseInt(args[2]);
+        int k = (args.length > 3) ? Integer.parseInt(args[3]) : Math.min(rows, cols);
+        return new Board(rows, cols, k);
+    }
+
+    /**Returns the engine for an interactive game on BOARD, consulting the
+     * opening book for BOARD's shape if there is one, and then TABLEBASE if
+     * it is not null, or else the solver table for BOARD's shape if there is
+     * one. -Dgame.threads=N searches on N threads,
+     * -Dgame.table=MB keeps an off-heap transposition table of that size,
+     * shared by all of them and by pondering (which uses one of
+     * PONDER_TABLE megabytes if none is given, so the threads read what it
+     * found), and -Dgame.engine=mcts uses Monte Carlo tree search instead
+     * of alpha-beta.*/
+    private static Engine newEngine(Board board, PerfectPlay tablebase) throws IOException {
+        Path bookFile = OpeningBook.fileFor(board.rows(), board.cols(), board.k());
+        OpeningBook book = Files.exists(bookFile) ? OpeningBook.load(bookFile) : null;
+        Path solved = Solver.fileFor(board.rows(), board.cols(), board.k());
+        if (tablebase == null && Files.exists(solved)) {
+            tablebase = Solver.load(solved);
         }
-        if (Arrays.equals(bottomLine, new Piece[] {EMP, X, X}) && Arrays.equals(rightLine, new Piece[] {EMP, X, X})) {
-            return true;
+        int threads = Integer.getInteger("game.threads", 1);
+        if ("mcts".equals(System.getProperty("game.engine"))) {
+            return new Engine(new Mcts(threads), book);
         }
-        if (Arrays.equals(leftLine, new Piece[] {EMP, X, X}) && Arrays.equals(bottomLine, new Piece[] {X, X, EMP})) {
-            return true;
+        Integer megabytes = Integer.getInteger("game.table");
+        if (megabytes == null && threads > 1 && Boolean.getBoolean("game.ponder")) {
+            megabytes = PONDER_TABLE; // Pondering fills the table, so the search threads must share it.
         }
-        return false;
+        TranspositionTable table = (megabytes == null) ? new HeapTable(1 << 16) : new OffHeapTable(megabytes);
+        ParallelSearch parallel = (threads > 1) ? new ParallelSearch(threads, (megabytes == null) ? null : table) : null;
+        return new Engine(new Search(table), parallel, tablebase, book);
     }
 
-    /**Machine's move.*/
-    private static String machineMove;
+    /**Size in megabytes of the table shared by pondering and a parallel
+     * search when -Dgame.table does not give one.*/
+    private static final int PONDER_TABLE = 64;
+
+    /**Returns the search limits set with -Dgame.depth=N plies for alpha-beta,
+     * -Dgame.iterations=N playouts for MCTS, and -Dgame.millis=N, a bound
+     * on the time per move for either. With a time, alpha-beta searches
+     * deeper and deeper until it runs out, to -Dgame.depth if that is
+     * given, and stops starting new depths after -Dgame.softMillis=N (half
+     * the time by default). Without one, it searches to -Dgame.depth (1 by
+     * default).*/
+    static SearchLimits limits() {
+        Long millis = Long.getLong("game.millis");
+        SearchLimits limits = SearchLimits.depth(Integer.getInteger("game.depth",
+                                                                    (millis == null) ? 1 : Integer.MAX_VALUE));
+        Long iterations = Long.getLong("game.iterations");
+        if (iterations != null) {
+            limits = limits.withIterations(iterations);
+        }
+        if (millis != null) {
+            limits = limits.withMillis(millis);
+        }
+        Long softMillis = Long.getLong("game.softMillis");
+        if (softMillis != null) {
+            limits = limits.withSoftMillis(softMillis);
+        }
+        return limits;
+    }
 
 }
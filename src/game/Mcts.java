@@ -0,0 +1,235 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static game.Piece.*;
+
+/** Monte Carlo tree search. Each iteration walks down the tree choosing
+ *  children by UCT (average result plus an exploration bonus for children
+ *  visited less), expands the node it stops at once it has been visited
+ *  twice, plays the game out with uniformly random moves, and adds the
+ *  result to every node on the path. The move played is the root child
+ *  visited most. Needs no evaluation function, so it works on any board.
+ *
+ *  Several threads share one tree (tree parallelism), each playing out on
+ *  its own copy of the board. A thread counts its visit to a node on the
+ *  way down, before it knows the result, so the node looks like a loss to
+ *  the others until the result is added (virtual loss) and they spread
+ *  out over different children. The tree is thrown away after each move. */
+final class Mcts {
+
+    /** Playouts per move when the limits give neither iterations nor a time.*/
+    static final long DEFAULT_ITERATIONS = 20000;
+
+    /** Weight of the exploration term in UCT.*/
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /** Visits a node needs before its children are added.*/
+    private static final int EXPAND = 2;
+
+    /** Creates a searcher running THREADS threads per move: the caller and
+     *  THREADS - 1 workers of its own.*/
+    Mcts(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one search thread.");
+        }
+        _threads = threads;
+        _pool = (threads == 1) ? null : Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /** Returns the move for the player to move in BOARD after searching
+     *  within the iteration and time LIMITS. Its score is the chance of
+     *  winning, counting a tie as half, scaled to -1000 (O always wins) to
+     *  1000 (X always wins); its node count is the number of playouts.
+     *  BOARD is not modified.*/
+    Move bestMove(Board board, SearchLimits limits) {
+        long iterations = limits.iterations();
+        if (iterations == SearchLimits.UNLIMITED && limits.millis() == SearchLimits.UNLIMITED) {
+            iterations = DEFAULT_ITERATIONS;
+        }
+        long deadline = (limits.millis() == SearchLimits.UNLIMITED)
+            ? Long.MAX_VALUE : System.nanoTime() + limits.millis() * 1000000;
+        Node root = new Node(-1);
+        root.expand(board, new int[board.cells()]);
+        AtomicLong started = new AtomicLong();
+        long budget = iterations;
+
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int t = 1; t < _threads; t += 1) {
+            SplittableRandom random = nextRandom();
+            helpers.add(_pool.submit(() -> iterate(board, root, random, started, budget, deadline)));
+        }
+        iterate(board, root, nextRandom(), started, budget, deadline);
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException error) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException error) {
+                throw new IllegalStateException("A search thread failed.", error.getCause());
+            }
+        }
+
+        Node best = null;
+        for (Node child : root.children) {
+            if (best == null || child.visits > best.visits) {
+                best = child;
+            }
+        }
+        double value = (best.visits == 0) ? 0.5 : best.wins / (2.0 * best.visits);
+        int score = (int) Math.round(2000 * value - 1000);
+        return new Move(best.move, (board.getCurrPlayer() == X) ? score : -score, root.visits);
+    }
+
+    /** Runs iterations on a private copy of BOARD until STARTED reaches
+     *  BUDGET or DEADLINE (a System.nanoTime) passes.*/
+    private void iterate(Board board, Node root, SplittableRandom random,
+                         AtomicLong started, long budget, long deadline) {
+        Board copy = Board.copyBoard(board);
+        int[] moves = new int[copy.cells()];
+        Node[] path = new Node[copy.cells() + 1];
+        while (started.getAndIncrement() < budget && System.nanoTime() < deadline) {
+            iteration(copy, root, moves, path, random);
+        }
+    }
+
+    /** Runs one select, expand, play out and back up pass from ROOT, whose
+     *  position is BOARD. BOARD is restored afterwards.*/
+    private static void iteration(Board board, Node root, int[] moves, Node[] path, SplittableRandom random) {
+        VISITS.incrementAndGet(root);
+        Node node = root;
+        int depth = 0;
+        while (!board.isGameOver()) {
+            Node[] children = node.children;
+            if (children == null) {
+                if (node != root && node.visits < EXPAND) {
+                    break;
+                }
+                children = node.expand(board, moves);
+            }
+            node = select(children, node.visits);
+            VISITS.incrementAndGet(node);
+            board.makeMove(node.move);
+            path[depth] = node;
+            depth += 1;
+        }
+
+        Piece winner = playout(board, moves, random);
+        for (int n = depth - 1; n >= 0; n -= 1) {
+            board.unmakeMove();
+            Piece mover = board.getCurrPlayer();
+            if (winner == mover) {
+                WINS.addAndGet(path[n], 2);
+            } else if (winner == null) {
+                WINS.addAndGet(path[n], 1);
+            }
+        }
+    }
+
+    /** Returns the child of a node visited PARENT times with the best UCT
+     *  value, or the first child nobody has visited yet.*/
+    private static Node select(Node[] children, int parent) {
+        double logParent = Math.log(Math.max(parent, 1));
+        Node best = children[0];
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (Node child : children) {
+            int visits = child.visits;
+            if (visits == 0) {
+                return child;
+            }
+            double value = child.wins / (2.0 * visits) + EXPLORATION * Math.sqrt(logParent / visits);
+            if (value > bestValue) {
+                bestValue = value;
+                best = child;
+            }
+        }
+        return best;
+    }
+
+    /** Plays random moves on BOARD until the game ends, takes them back, and
+     *  returns the winner, or null for a tie. Shuffles the empty squares
+     *  into MOVES as it goes, so each move costs one random number.*/
+    private static Piece playout(Board board, int[] moves, SplittableRandom random) {
+        int count = board.legalMoves(moves, 0);
+        int played = 0;
+        while (!board.isGameOver()) {
+            int pick = played + random.nextInt(count - played);
+            int move = moves[pick];
+            moves[pick] = moves[played];
+            moves[played] = move;
+            board.makeMove(move);
+            played += 1;
+        }
+        Piece winner = board.getWinner();
+        for (int n = 0; n < played; n += 1) {
+            board.unmakeMove();
+        }
+        return winner;
+    }
+
+    /** Returns a generator for one thread of one search.*/
+    private synchronized SplittableRandom nextRandom() {
+        return _seeds.split();
+    }
+
+    /** A position in the tree.*/
+    private static final class Node {
+
+        Node(int move) {
+            this.move = move;
+        }
+
+        /** Adds a child for every legal move in BOARD, the position of this
+         *  node, unless another thread has just done so, and returns the
+         *  children. MOVES is scratch space.*/
+        synchronized Node[] expand(Board board, int[] moves) {
+            if (children == null) {
+                int count = board.legalMoves(moves, 0);
+                Node[] nodes = new Node[count];
+                for (int n = 0; n < count; n += 1) {
+                    nodes[n] = new Node(moves[n]);
+                }
+                children = nodes;
+            }
+            return children;
+        }
+
+        /** Square played to reach this node, or -1 at the root.*/
+        final int move;
+
+        /** Children, or null until expanded.*/
+        volatile Node[] children;
+
+        /** Visits, counted on the way down, and results for the player who
+         *  made MOVE: 2 per win and 1 per tie.*/
+        volatile int visits, wins;
+    }
+
+    /** Atomic updates of Node counts.*/
+    private static final AtomicIntegerFieldUpdater<Node> VISITS =
+        AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+    private static final AtomicIntegerFieldUpdater<Node> WINS =
+        AtomicIntegerFieldUpdater.newUpdater(Node.class, "wins");
+
+    /** Threads per search.*/
+    private final int _threads;
+
+    /** Helper threads, or null if searching on the caller alone.*/
+    private final ExecutorService _pool;
+
+    /** Source of per-thread random generators.*/
+    private final SplittableRandom _seeds = new SplittableRandom(0x5DEECE66DL);
+}
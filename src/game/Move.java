@@ -0,0 +1,54 @@
+package game;
+
+/** A move chosen by an Engine: the square (numbered as in Board), the
+ *  score the search gave it with X maximising, and what the search did to
+ *  find it. Immutable. */
+final class Move {
+
+    /** A move to SQUARE with SCORE, found by searching NODES nodes.*/
+    Move(int square, int score, long nodes) {
+        this(square, score, new SearchStats(nodes));
+    }
+
+    /** A move to SQUARE with SCORE, found by a search that did what STATS
+     *  records. STATS is copied.*/
+    Move(int square, int score, SearchStats stats) {
+        _square = square;
+        _score = score;
+        _stats = stats.copy();
+    }
+
+    /** Square to play.*/
+    int square() {
+        return _square;
+    }
+
+    /** Score of the position after the move; higher is better for X.*/
+    int score() {
+        return _score;
+    }
+
+    /** Nodes searched to find the move.*/
+    long nodes() {
+        return _stats.nodes;
+    }
+
+    /** Returns a copy of what the search did to find the move.*/
+    SearchStats stats() {
+        return _stats.copy();
+    }
+
+    /** Returns the move as typed by a player on BOARD, e.g. "2,3".*/
+    String name(Board board) {
+        return board.moveName(_square);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("square %d (score %d, %s)", _square, _score, _stats);
+    }
+
+    /** See the accessors.*/
+    private final int _square, _score;
+    private final SearchStats _stats;
+}
@@ -0,0 +1,108 @@
+package game;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** A TranspositionTable in direct memory, outside the Java heap, which any
+ *  number of search threads may share without locks. However big it is,
+ *  it adds a few objects to the heap and nothing for the collector to trace.
+ *
+ *  A slot is two longs: the key XORed with the packed entry, then the
+ *  entry. Each long is read and written atomically, but a slot as a whole
+ *  is not, so two threads storing at once can leave one's key word with
+ *  the other's entry. A probe therefore only accepts a slot whose first
+ *  word XORed with its second gives back the key probed for; a torn slot
+ *  fails that check and reads as a miss, so no lock is needed. Memory is
+ *  taken in segments of up to 1 GB, as a ByteBuffer is indexed by int. */
+final class OffHeapTable implements TranspositionTable {
+
+    /** Bytes per slot.*/
+    private static final int SLOT = 16;
+
+    /** Most slots in one segment.*/
+    private static final int SEGMENT_SLOTS = 1 << 26;
+
+    /** Atomic long access to a ByteBuffer.*/
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** Creates a table using MEGABYTES of direct memory, rounded down to a
+     *  power of two of at least 16 bytes a slot. The JVM only allows as much
+     *  direct memory as -XX:MaxDirectMemorySize, by default the heap size.*/
+    OffHeapTable(long megabytes) {
+        if (megabytes < 1) {
+            throw new IllegalArgumentException("Table must have at least 1 MB.");
+        }
+        long slots = Long.highestOneBit(megabytes * (1 << 20) / SLOT);
+        int segmentSlots = (int) Math.min(slots, SEGMENT_SLOTS);
+        _segments = new ByteBuffer[(int) (slots / segmentSlots)];
+        for (int n = 0; n < _segments.length; n += 1) {
+            _segments[n] = ByteBuffer.allocateDirect(segmentSlots * SLOT).order(ByteOrder.nativeOrder());
+        }
+        _mask = slots - 1;
+        _segmentShift = Integer.numberOfTrailingZeros(segmentSlots);
+        _slotMask = segmentSlots - 1;
+    }
+
+    @Override
+    public void newSearch() {
+        _age = (_age == MAX_AGE) ? 1 : _age + 1;
+    }
+
+    @Override
+    public long probe(long key) {
+        long slot = key & _mask;
+        ByteBuffer segment = _segments[(int) (slot >>> _segmentShift)];
+        int at = (int) (slot & _slotMask) * SLOT;
+        long entry = (long) LONGS.getOpaque(segment, at + 8);
+        if (entry != MISS && ((long) LONGS.getOpaque(segment, at) ^ entry) == key) {
+            return entry;
+        }
+        return MISS;
+    }
+
+    @Override
+    public void store(long key, int score, int depth, byte bound, int move) {
+        long slot = key & _mask;
+        ByteBuffer segment = _segments[(int) (slot >>> _segmentShift)];
+        int at = (int) (slot & _slotMask) * SLOT;
+        int age = _age;
+        long old = (long) LONGS.getOpaque(segment, at + 8);
+        if (old == MISS || ((long) LONGS.getOpaque(segment, at) ^ old) == key
+            || TranspositionTable.age(old) != age || depth >= TranspositionTable.depth(old)) {
+            long entry = TranspositionTable.pack(score, depth, bound, move, age);
+            LONGS.setOpaque(segment, at, key ^ entry);
+            LONGS.setOpaque(segment, at + 8, entry);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (ByteBuffer segment : _segments) {
+            for (int at = 0; at < segment.capacity(); at += 8) {
+                LONGS.setOpaque(segment, at, 0L);
+            }
+        }
+    }
+
+    @Override
+    public long capacity() {
+        return _mask + 1;
+    }
+
+    /** Direct memory, SLOT bytes per slot.*/
+    private final ByteBuffer[] _segments;
+
+    /** Slot index mask; capacity is a power of two.*/
+    private final long _mask;
+
+    /** A slot's segment is its index shifted right by _segmentShift; its
+     *  place in the segment is its index masked by _slotMask.*/
+    private final int _segmentShift, _slotMask;
+
+    /** Current search generation, from 1 to MAX_AGE. Threads sharing the
+     *  table only need to agree on it roughly.*/
+    private volatile int _age = 1;
+}
@@ -0,0 +1,242 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/** Best moves for the opening positions of one board shape, worked out
+ *  ahead of time so that the first moves of a game, which need the
+ *  deepest searches, cost a lookup. Positions are keyed by canonical hash,
+ *  so one entry covers every rotation and reflection of a position, and
+ *  moves are stored in the canonical frame like the transposition table's.
+ *
+ *  The file is a header (magic number, version, rows, cols, k, plies and
+ *  entry count, all ints) followed by the entries in key order, each a
+ *  long key, a short move, a byte search depth and an int score: 15 bytes
+ *  a position. Lookups binary-search the keys in memory. */
+final class OpeningBook {
+
+    /** File header: magic number and format version.*/
+    private static final int MAGIC = 0x5454544F, VERSION = 2;
+
+    /** Returns the default book file for a ROWS x COLS board needing K in a row.*/
+    static Path fileFor(int rows, int cols, int k) {
+        return Paths.get("book-" + rows + "x" + cols + "-" + k + ".bin");
+    }
+
+    private OpeningBook(int rows, int cols, int k, int plies,
+                        long[] keys, short[] moves, byte[] depths, int[] scores) {
+        _rows = rows;
+        _cols = cols;
+        _k = k;
+        _plies = plies;
+        _keys = keys;
+        _moves = moves;
+        _depths = depths;
+        _scores = scores;
+    }
+
+    /** Reads the book in FILE.*/
+    static OpeningBook load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not an opening book.");
+            }
+            int rows = in.readInt();
+            int cols = in.readInt();
+            int k = in.readInt();
+            int plies = in.readInt();
+            int count = in.readInt();
+            long[] keys = new long[count];
+            short[] moves = new short[count];
+            byte[] depths = new byte[count];
+            int[] scores = new int[count];
+            for (int n = 0; n < count; n += 1) {
+                keys[n] = in.readLong();
+                moves[n] = in.readShort();
+                depths[n] = in.readByte();
+                scores[n] = in.readInt();
+            }
+            return new OpeningBook(rows, cols, k, plies, keys, moves, depths, scores);
+        }
+    }
+
+    /** Writes the book to FILE, through a temporary file so a reader never
+     *  sees half a book.*/
+    void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_rows);
+            out.writeInt(_cols);
+            out.writeInt(_k);
+            out.writeInt(_plies);
+            out.writeInt(_keys.length);
+            for (int n = 0; n < _keys.length; n += 1) {
+                out.writeLong(_keys[n]);
+                out.writeShort(_moves[n]);
+                out.writeByte(_depths[n]);
+                out.writeInt(_scores[n]);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Returns the book move for BOARD, or null if BOARD is another shape
+     *  or its position is not in the book.*/
+    Move probe(Board board) {
+        if (board.rows() != _rows || board.cols() != _cols || board.k() != _k
+            || board.historySize() >= _plies) {
+            return null;
+        }
+        int symmetry = board.canonicalSymmetry();
+        int n = Arrays.binarySearch(_keys, board.hash(symmetry));
+        if (n < 0) {
+            return null;
+        }
+        return new Move(board.untransform(symmetry, _moves[n]), _scores[n], 0);
+    }
+
+    /** Number of positions in the book.*/
+    int size() {
+        return _keys.length;
+    }
+
+    /** Collects book entries, searching each new position with an engine.
+     *  A Builder is also a GameLog.Sink, so the opening positions of recorded
+     *  games, such as self-play logs, can be added by replaying them into it.*/
+    static final class Builder implements GameLog.Sink {
+
+        /** Starts an empty book for ROWS x COLS boards needing K in a row,
+         *  covering positions with fewer than PLIES moves played, whose
+         *  moves are searched within LIMITS.*/
+        Builder(int rows, int cols, int k, int plies, SearchLimits limits) {
+            Lines.forShape(rows, cols, k);
+            _rows = rows;
+            _cols = cols;
+            _k = k;
+            _plies = plies;
+            _limits = limits;
+            _engine = new Engine(new Search(new HeapTable(1 << 20)), null, null);
+        }
+
+        /** Starts from the entries of BOOK, searching new positions within LIMITS.*/
+        Builder(OpeningBook book, SearchLimits limits) {
+            this(book._rows, book._cols, book._k, book._plies, limits);
+            for (int n = 0; n < book._keys.length; n += 1) {
+                _entries.put(book._keys[n], new int[] {book._moves[n], book._depths[n], book._scores[n]});
+            }
+        }
+
+        /** Adds every position reachable in fewer than the book's plies,
+         *  including those below positions the book already has, so a book
+         *  seeded from games or built for some lines can be completed.*/
+        synchronized void addAll() {
+            addAll(new Board(_rows, _cols, _k), new HashSet<>());
+        }
+
+        /** Adds BOARD's position and every position reachable from it
+         *  within the book's plies, skipping positions whose canonical key
+         *  is in VISITED, the ones this walk has already been through.*/
+        private void addAll(Board board, Set<Long> visited) {
+            if (board.isGameOver() || board.historySize() >= _plies
+                || !visited.add(board.hash(board.canonicalSymmetry()))) {
+                return;
+            }
+            add(board);
+            int[] moves = new int[board.cells()];
+            int count = board.legalMoves(moves, 0);
+            for (int n = 0; n < count; n += 1) {
+                board.makeMove(moves[n]);
+                addAll(board, visited);
+                board.unmakeMove();
+            }
+        }
+
+        /** Adds the opening positions of a game to the book. Games on other
+         *  boards are skipped.*/
+        @Override
+        public synchronized void write(int rows, int cols, int k, int[] moves, int count) {
+            if (rows != _rows || cols != _cols || k != _k) {
+                return;
+            }
+            Board board = new Board(rows, cols, k);
+            for (int n = 0; n < count && board.historySize() < _plies && !board.isGameOver(); n += 1) {
+                add(board);
+                board.makeMove(moves[n]);
+            }
+        }
+
+        /** Searches BOARD's position and adds it, unless it is already in the
+         *  book searched at least as deep.*/
+        private void add(Board board) {
+            int symmetry = board.canonicalSymmetry();
+            long key = board.hash(symmetry);
+            int[] entry = _entries.get(key);
+            if (entry != null && entry[1] >= Math.min(_limits.depth(), Byte.MAX_VALUE)) {
+                return;
+            }
+            Move move = _engine.bestMove(board, _limits);
+            _entries.put(key, new int[] {board.transform(symmetry, move.square()),
+                                         Math.min(_limits.depth(), Byte.MAX_VALUE), move.score()});
+        }
+
+        /** Number of positions collected.*/
+        synchronized int size() {
+            return _entries.size();
+        }
+
+        /** Returns the finished book.*/
+        synchronized OpeningBook build() {
+            long[] keys = new long[_entries.size()];
+            int n = 0;
+            for (long key : _entries.keySet()) {
+                keys[n++] = key;
+            }
+            Arrays.sort(keys);
+            short[] moves = new short[keys.length];
+            byte[] depths = new byte[keys.length];
+            int[] scores = new int[keys.length];
+            for (n = 0; n < keys.length; n += 1) {
+                int[] entry = _entries.get(keys[n]);
+                moves[n] = (short) entry[0];
+                depths[n] = (byte) entry[1];
+                scores[n] = entry[2];
+            }
+            return new OpeningBook(_rows, _cols, _k, _plies, keys, moves, depths, scores);
+        }
+
+        /** Board shape and number of plies covered.*/
+        private final int _rows, _cols, _k, _plies;
+
+        /** Limits for searching new positions.*/
+        private final SearchLimits _limits;
+
+        /** Engine searching new positions.*/
+        private final Engine _engine;
+
+        /** Move, depth and score of each position, by canonical key.*/
+        private final Map<Long, int[]> _entries = new HashMap<>();
+    }
+
+    /** Board shape and number of plies covered.*/
+    private final int _rows, _cols, _k, _plies;
+
+    /** Canonical keys, sorted, and the move, depth and score for each.*/
+    private final long[] _keys;
+    private final short[] _moves;
+    private final byte[] _depths;
+    private final int[] _scores;
+}
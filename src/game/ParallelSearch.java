@@ -0,0 +1,141 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/** Splits the root of an Engine's alpha-beta search across a
+ *  ForkJoinPool. The first root move is searched on its own to get a bound
+ *  (young brothers wait); the remaining moves are then searched in
+ *  parallel, each on its own copy of the board. Every task starts from the
+ *  best score found so far, which all tasks share through the
+ *  SearchResult, so later tasks cut off as much as the sequential search
+ *  would. Each worker thread has its own Search, so one ParallelSearch can
+ *  serve several engines at once, and either its own transposition table
+ *  or a share of one OffHeapTable. */
+final class ParallelSearch {
+
+    /** Creates a searcher using THREADS worker threads, each with its own table.*/
+    ParallelSearch(int threads) {
+        this(threads, null);
+    }
+
+    /** Creates a searcher using THREADS worker threads, which all share
+     *  TABLE, so each sees what the others have found. TABLE must be safe
+     *  to share, like an OffHeapTable; if it is null, each thread has its
+     *  own table instead.*/
+    ParallelSearch(int threads, TranspositionTable table) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Need at least one search thread.");
+        }
+        _pool = new ForkJoinPool(threads);
+        _table = table;
+        _searches = ThreadLocal.withInitial(() -> new Search((table == null) ? new HeapTable(1 << 16) : table));
+    }
+
+    /** Searches BOARD to DEPTH and records the best root move in RESULT,
+     *  returning its score. BOARD is not modified.*/
+    int search(Board board, int depth, SearchResult result) {
+        return search(board, depth, result, Long.MAX_VALUE);
+    }
+
+    /** As search(BOARD, DEPTH, RESULT), but stopping every thread once
+     *  System.nanoTime() reaches DEADLINE, in which case RESULT is
+     *  abandoned.*/
+    int search(Board board, int depth, SearchResult result, long deadline) {
+        int[] legalMoves = new int[board.cells()];
+        int count = board.candidateMoves(legalMoves, 0);
+        if (_table != null) {
+            _table.newSearch();
+        }
+        if (depth == 0 || board.isGameOver() || count < 2) {
+            Search search = _searches.get();
+            if (_table == null) {
+                search.table().newSearch();
+            }
+            search.deadline(deadline);
+            int score = search.run(Board.copyBoard(board), depth, Integer.MIN_VALUE, Integer.MAX_VALUE, result);
+            finish(search, result);
+            return score;
+        }
+
+        searchMove(board, legalMoves[0], depth, result, deadline);
+        List<RecursiveAction> brothers = new ArrayList<>();
+        for (int n = 1; n < count; n += 1) {
+            int move = legalMoves[n];
+            brothers.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    searchMove(board, move, depth, result, deadline);
+                }
+            });
+        }
+        _pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(brothers);
+            }
+        });
+        return result.score();
+    }
+
+    /** Searches root move MOVE of BOARD on a private copy, with the shared
+     *  bound in RESULT as its window, and offers the outcome to RESULT.
+     *  Skips the move if another one has already been proven to win: the
+     *  window would be empty, and fail-hard bounds from an empty window are
+     *  not safe to store in the transposition table. Also skips it once
+     *  RESULT has been abandoned, and abandons RESULT if the search is
+     *  still running at DEADLINE.*/
+    private void searchMove(Board board, int move, int depth, SearchResult result, long deadline) {
+        if (result.abandoned()) {
+            return;
+        }
+        int alpha = Integer.MIN_VALUE;
+        int beta = Integer.MAX_VALUE;
+        if (result.maximising()) {
+            alpha = result.bound();
+        } else {
+            beta = result.bound();
+        }
+        if (alpha >= beta) {
+            return;
+        }
+        Board copy = Board.copyBoard(board);
+        copy.makeMove(move);
+        Search search = _searches.get();
+        if (_table == null) {
+            search.table().newSearch();
+        }
+        search.deadline(deadline);
+        int score = search.run(copy, depth - 1, alpha, beta, null);
+        SearchStats stats = search.last();
+        stats.depth += 1; // Counting MOVE, played before the search started.
+        result.add(stats);
+        if (finish(search, result)) {
+            result.offer(move, score);
+        }
+    }
+
+    /** Abandons RESULT if SEARCH's last run was stopped, and readies SEARCH
+     *  for its next run. Returns true if the run finished.*/
+    private static boolean finish(Search search, SearchResult result) {
+        search.deadline(Long.MAX_VALUE);
+        if (search.stopped()) {
+            search.restart();
+            result.abandon();
+            return false;
+        }
+        return true;
+    }
+
+    /** Worker threads.*/
+    private final ForkJoinPool _pool;
+
+    /** Table shared by every thread, or null if each has its own.*/
+    private final TranspositionTable _table;
+
+    /** One search per thread, since Search is not thread-safe.*/
+    private final ThreadLocal<Search> _searches;
+}
@@ -0,0 +1,17 @@
+package game;
+
+/** Knows the result of some positions under perfect play, and a move that
+ *  keeps it. Engines consult one before searching. */
+interface PerfectPlay {
+
+    /** Results of a position.*/
+    int UNKNOWN = 0, X_WINS = 1, DRAW = 2, O_WINS = 3;
+
+    /** Returns the result of BOARD under perfect play: X_WINS, DRAW, O_WINS,
+     *  or UNKNOWN if it is not known.*/
+    int result(Board board);
+
+    /** Returns the square of a perfect move for the player to move in BOARD,
+     *  or -1 if the game is over or the position's result is not known.*/
+    int bestMove(Board board);
+}
@@ -0,0 +1,12 @@
+package game;
+
+/** Shows boards to a player. Interactive games render the board after
+ *  every move; batch modes use NONE so they pay nothing for it. */
+interface Renderer {
+
+    /** A renderer that shows nothing.*/
+    Renderer NONE = board -> { };
+
+    /** Shows BOARD in its current state.*/
+    void render(Board board);
+}
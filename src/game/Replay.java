@@ -0,0 +1,381 @@
+package game;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Replays recorded games in bulk, checking every move, without drawing
+ *  any boards. Files are either text scripts, as read by Main.readFile,
+ *  or binary GameLogs; the format is told apart by the GameLog header.
+ *
+ *  A text file may hold many games. A game ends at "auto" or "comp" (where
+ *  a script would hand over to a player), at "new [R C [K]]", which also
+ *  sets the board for the next game (3x3 by default), and at the end of the
+ *  file. "display" and blank lines are skipped. Files are read through a
+ *  FileChannel into one buffer and moves are parsed straight from its
+ *  bytes, so a line costs no objects.
+ *
+ *  Each game gives one result line, "FILE#N RESULT MOVES", where RESULT is
+ *  X, O, tie, unfinished, or invalid followed by the first problem found. */
+final class Replay {
+
+    /** Size of the read buffer, which also bounds the length of a line.*/
+    private static final int BUFFER = 1 << 17;
+
+    /** Totals over replayed games.*/
+    static final class Stats {
+        /** Games won by X, won by O, tied, stopped before the end, and with a bad move or command.*/
+        long xWins, oWins, ties, unfinished, invalid;
+
+        /** Adds OTHER's totals to these.*/
+        void add(Stats other) {
+            xWins += other.xWins;
+            oWins += other.oWins;
+            ties += other.ties;
+            unfinished += other.unfinished;
+            invalid += other.invalid;
+        }
+
+        /** Number of games replayed.*/
+        long games() {
+            return xWins + oWins + ties + unfinished + invalid;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games: X won %d, O won %d, %d ties, %d unfinished, %d invalid",
+                                 games(), xWins, oWins, ties, unfinished, invalid);
+        }
+    }
+
+    /** Creates a replayer that hands every valid game to LOG, unless it is null.*/
+    Replay(GameLog.Sink log) {
+        _log = log;
+    }
+
+    /** Replays FILES on THREADS threads and appends their result lines to
+     *  OUT in file order, or only totals them if OUT is null. With more than
+     *  one thread, each file's lines are held until it is done, and games go
+     *  into the log in whatever order the files finish.*/
+    Stats run(List<Path> files, int threads, Appendable out) throws IOException, InterruptedException {
+        Stats total = new Stats();
+        if (threads <= 1 || files.size() <= 1) {
+            for (Path file : files) {
+                total.add(replay(file, out));
+            }
+            return total;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Stats>> parts = new ArrayList<>();
+            List<StringBuilder> lines = new ArrayList<>();
+            for (Path file : files) {
+                StringBuilder buffer = (out == null) ? null : new StringBuilder();
+                lines.add(buffer);
+                parts.add(pool.submit(() -> replay(file, buffer)));
+            }
+            for (int n = 0; n < parts.size(); n += 1) {
+                total.add(parts.get(n).get());
+                if (out != null) {
+                    out.append(lines.get(n));
+                    lines.set(n, null);
+                }
+            }
+            return total;
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof IOException) {
+                throw (IOException) error.getCause();
+            }
+            throw new IllegalStateException("A replay thread failed.", error.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Replays every game in FILE, appending result lines to OUT unless it is null.*/
+    Stats replay(Path file, Appendable out) throws IOException {
+        Game game = new Game(file.getFileName().toString(), out);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+            buffer.flip();
+            if (fill(channel, buffer, 4) && buffer.getInt(buffer.position()) == GameLog.MAGIC) {
+                readLog(file, channel, buffer, game);
+            } else {
+                buffer.compact();
+                readText(file, channel, buffer, game);
+            }
+        }
+        game.finish();
+        return game.stats;
+    }
+
+    /** Replays the text script in CHANNEL through BUFFER, which may already
+     *  hold the start of the file.*/
+    private void readText(Path file, FileChannel channel, ByteBuffer buffer, Game game) throws IOException {
+        byte[] bytes = buffer.array();
+        boolean eof = false;
+        while (!eof) {
+            eof = channel.read(buffer) < 0;
+            buffer.flip();
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start; i < limit; i += 1) {
+                if (bytes[i] == '\n') {
+                    game.line(bytes, start, i);
+                    start = i + 1;
+                }
+            }
+            if (eof && start < limit) {
+                game.line(bytes, start, limit);
+                start = limit;
+            }
+            buffer.position(start);
+            buffer.compact();
+            if (!buffer.hasRemaining()) {
+                throw new IOException(file + " has a line longer than " + BUFFER + " bytes.");
+            }
+        }
+    }
+
+    /** Replays the GameLog in CHANNEL through BUFFER, which is in read
+     *  mode and may already hold the start of the file.*/
+    private void readLog(Path file, FileChannel channel, ByteBuffer buffer, Game game) throws IOException {
+        game._unit = "move";
+        if (!fill(channel, buffer, GameLog.HEADER) || buffer.getInt() != GameLog.MAGIC
+            || buffer.getInt() != GameLog.VERSION) {
+            throw new IOException(file + " is not a version " + GameLog.VERSION + " game log.");
+        }
+        while (fill(channel, buffer, GameLog.RECORD_HEADER)) {
+            int rows = buffer.get() & 0xFF;
+            int cols = buffer.get() & 0xFF;
+            int k = buffer.get() & 0xFF;
+            int count = buffer.getShort() & 0xFFFF;
+            if (!fill(channel, buffer, count)) {
+                throw new IOException(file + " ends in the middle of a game.");
+            }
+            try {
+                game.start(rows, cols, k);
+            } catch (IllegalArgumentException error) {
+                game.fail("bad board");
+            }
+            for (int n = 0; n < count; n += 1) {
+                game.play(buffer.get() & 0xFF, n + 1);
+            }
+            game.finish();
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException(file + " ends in the middle of a game.");
+        }
+    }
+
+    /** Reads from CHANNEL until BUFFER, in read mode, has at least COUNT
+     *  bytes left. Returns false if the file ends first.*/
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int count) throws IOException {
+        while (buffer.remaining() < count) {
+            buffer.compact();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The game being replayed from one file, and the file's totals.*/
+    private final class Game {
+
+        Game(String name, Appendable out) {
+            _name = name;
+            _out = out;
+        }
+
+        /** Handles the text line in BYTES[FROM, TO).*/
+        void line(byte[] bytes, int from, int to) throws IOException {
+            _line += 1;
+            while (from < to && bytes[from] <= ' ') {
+                from += 1;
+            }
+            while (to > from && bytes[to - 1] <= ' ') {
+                to -= 1;
+            }
+            if (from == to) {
+                return;
+            }
+            if (bytes[from] >= '0' && bytes[from] <= '9') {
+                move(bytes, from, to);
+            } else if (startsWith(bytes, from, to, "display")) {
+                return;
+            } else if (startsWith(bytes, from, to, "auto") || startsWith(bytes, from, to, "comp")) {
+                finish();
+            } else if (startsWith(bytes, from, to, "new")) {
+                finish();
+                String[] args = new String(bytes, from + 3, to - from - 3, StandardCharsets.US_ASCII).trim().split("\\s+");
+                try {
+                    if (args[0].isEmpty()) {
+                        start(3, 3, 3);
+                    } else {
+                        int rows = Integer.parseInt(args[0]);
+                        int cols = Integer.parseInt(args[1]);
+                        start(rows, cols, (args.length > 2) ? Integer.parseInt(args[2]) : Math.min(rows, cols));
+                    }
+                } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException error) {
+                    fail("line " + _line + ": bad board");
+                }
+            } else {
+                fail("line " + _line + ": unknown command");
+            }
+        }
+
+        /** Plays the "row,col" move in BYTES[FROM, TO).*/
+        private void move(byte[] bytes, int from, int to) throws IOException {
+            int row = 0;
+            int col = 0;
+            int i = from;
+            while (i < to && i - from < 4 && bytes[i] >= '0' && bytes[i] <= '9') {
+                row = 10 * row + bytes[i] - '0';
+                i += 1;
+            }
+            int comma = i;
+            if (i == to || bytes[i] != ',') {
+                fail("line " + _line + ": bad move");
+                return;
+            }
+            i += 1;
+            while (i < to && i - comma <= 4 && bytes[i] >= '0' && bytes[i] <= '9') {
+                col = 10 * col + bytes[i] - '0';
+                i += 1;
+            }
+            if (i != to || i == comma + 1) {
+                fail("line " + _line + ": bad move");
+                return;
+            }
+            play(_board.square(row, col), _line);
+        }
+
+        /** Plays SQUARE (-1 if off the board), which is at line or move AT of the file.*/
+        void play(int square, int at) {
+            _open = true;
+            if (_error != null) {
+                return;
+            }
+            if (square < 0 || square >= _board.cells() || _board.isGameOver()) {
+                fail(_unit + " " + at + ": illegal move");
+                return;
+            }
+            try {
+                _board.makeMove(square);
+            } catch (IllegalArgumentException error) {
+                fail(_unit + " " + at + ": illegal move");
+                return;
+            }
+            _moves[_count] = square;
+            _count += 1;
+        }
+
+        /** Makes the next game start on a ROWS x COLS board needing K in a row.*/
+        void start(int rows, int cols, int k) {
+            if (_board.rows() != rows || _board.cols() != cols || _board.k() != k) {
+                _board = new Board(rows, cols, k);
+                _moves = new int[_board.cells()];
+            }
+            _open = true;
+        }
+
+        /** Marks the game invalid because of PROBLEM, unless it already is.*/
+        void fail(String problem) {
+            _open = true;
+            if (_error == null) {
+                _error = problem;
+            }
+        }
+
+        /** Reports the current game, if anything has happened in it, and
+         *  clears the board for the next one.*/
+        void finish() throws IOException {
+            if (!_open) {
+                return;
+            }
+            _game += 1;
+            String result;
+            if (_error != null) {
+                stats.invalid += 1;
+                result = "invalid (" + _error + ")";
+            } else if (_board.getWinner() == Piece.X) {
+                stats.xWins += 1;
+                result = "X";
+            } else if (_board.getWinner() == Piece.O) {
+                stats.oWins += 1;
+                result = "O";
+            } else if (_board.inTie()) {
+                stats.ties += 1;
+                result = "tie";
+            } else {
+                stats.unfinished += 1;
+                result = "unfinished";
+            }
+            if (_out != null) {
+                _out.append(_name).append('#').append(Integer.toString(_game)).append(' ')
+                    .append(result).append(' ').append(Integer.toString(_count)).append('\n');
+            }
+            if (_log != null && _error == null) {
+                _log.write(_board.rows(), _board.cols(), _board.k(), _moves, _count);
+            }
+            while (_board.historySize() > 0) {
+                _board.unmakeMove();
+            }
+            _count = 0;
+            _open = false;
+            _error = null;
+        }
+
+        /** Totals for the file.*/
+        final Stats stats = new Stats();
+
+        /** File name and where result lines go.*/
+        private final String _name;
+        private final Appendable _out;
+
+        /** The board, reused from game to game, and the moves played on it.*/
+        private Board _board = new Board();
+        private int[] _moves = new int[_board.cells()];
+        private int _count;
+
+        /** How problems are located: by "line" in a script, by "move" in a log.*/
+        private String _unit = "line";
+
+        /** Games reported so far and text lines read so far.*/
+        private int _game, _line;
+
+        /** True once the current game has a move, a problem or a new board.*/
+        private boolean _open;
+
+        /** First problem in the current game, or null.*/
+        private String _error;
+    }
+
+    /** Returns true if BYTES[FROM, TO) starts with WORD.*/
+    private static boolean startsWith(byte[] bytes, int from, int to, String word) {
+        if (to - from < word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i += 1) {
+            if (bytes[from + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Where valid games are handed, or null.*/
+    private final GameLog.Sink _log;
+}
@@ -0,0 +1,315 @@
+package game;
+
+import java.util.Arrays;
+
+import static game.Piece.*;
+
+/** Alpha-beta search behind Engine.bestMove, with everything it learns
+ *  between nodes: a transposition table, killer moves and a history table.
+ *  Moves come from Board.candidateMoves, so on big boards only squares
+ *  near the pieces are searched. They are tried hash move first, then the
+ *  two killer moves of the ply (moves that caused a cutoff in a sibling),
+ *  then by history score (how often, weighted by depth, a move has caused
+ *  a cutoff anywhere). After the first move of a node the rest are
+ *  searched with a null window (principal variation search), and only
+ *  re-searched with the full window if they turn out to be better. A
+ *  Search is not thread-safe; use one per thread; only stop() may be
+ *  called while another thread is searching. */
+final class Search {
+
+    /** Creates a search with move ordering and null-window searches, caching results in TABLE.*/
+    Search(TranspositionTable table) {
+        this(table, true);
+    }
+
+    /** Creates a search caching results in TABLE. If ORDERING is false, moves
+     *  are searched in generation order with full windows, which is only
+     *  useful for measuring what ordering saves.*/
+    Search(TranspositionTable table, boolean ordering) {
+        _table = table;
+        _ordering = ordering;
+    }
+
+    /** Returns a buffer big enough for every node on one search path to
+     *  generate its moves into, each node using the slots above its parent's.*/
+    static int[] moveStack(Board board) {
+        int cells = board.cells();
+        return new int[cells * (cells + 1) / 2 + 1];
+    }
+
+    /** Searches BOARD to DEPTH within (ALPHA, BETA) and returns the score,
+     *  saving the best root move in RESULT if it is not null. X is the
+     *  maximising player. BOARD is restored before returning. Callers
+     *  start a new table generation with table().newSearch() once per
+     *  move, since the table may be shared by several searches.*/
+    int run(Board board, int depth, int alpha, int beta, SearchResult result) {
+        prepare(board);
+        _stats = new SearchStats();
+        int score = search(board, 0, 0, depth, alpha, beta, result);
+        _total.add(_stats);
+        if (result != null) {
+            result.add(_stats);
+        }
+        return score;
+    }
+
+    /** Makes the current run, and every run after it until restart(), return
+     *  at its next node with a meaningless score, storing nothing in the
+     *  table and offering no move. May be called from any thread.*/
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Lets runs search again after stop().*/
+    void restart() {
+        _stopped = false;
+    }
+
+    /** Makes runs stop, as if by stop(), once System.nanoTime() reaches
+     *  DEADLINE, or never if it is Long.MAX_VALUE. The clock is read every
+     *  CLOCK nodes, so a run overshoots by well under a millisecond.*/
+    void deadline(long deadline) {
+        _deadline = deadline;
+    }
+
+    /** True if stop() has been called, or the deadline passed, since
+     *  restart(), so the last run's score and move mean nothing.*/
+    boolean stopped() {
+        return _stopped;
+    }
+
+    /** What the last call of run did.*/
+    SearchStats last() {
+        return _stats;
+    }
+
+    /** What every call of run has done, added up.*/
+    SearchStats total() {
+        return _total;
+    }
+
+    /** Transposition table this search uses.*/
+    TranspositionTable table() {
+        return _table;
+    }
+
+    /** Sizes the per-search buffers for BOARD, clears the killer moves, and
+     *  halves the history scores so old cutoffs count for less.*/
+    private void prepare(Board board) {
+        int cells = board.cells();
+        if (_moves.length < cells * (cells + 1) / 2 + 1) {
+            _moves = moveStack(board);
+            _order = new int[_moves.length];
+            _killers = new int[2 * (cells + 1)];
+            _history = new int[2 * cells];
+        }
+        if (_cells != cells) {
+            Arrays.fill(_history, 0);
+            _cells = cells;
+        }
+        Arrays.fill(_killers, TranspositionTable.NO_MOVE);
+        for (int i = 0; i < _history.length; i += 1) {
+            _history[i] >>= 1;
+        }
+    }
+
+    /** Searches the node PLY moves below the root, generating its moves into
+     *  _moves from index TOP up. Results are cached in the transposition
+     *  table under the position's canonical hash, so transpositions and
+     *  symmetric positions share an entry. Only the root call is given a
+     *  RESULT to save its best move in; inner calls pass null.*/
+    private int search(Board board, int ply, int top, int depth, int alpha, int beta, SearchResult result) {
+        _stats.nodes += 1;
+        if ((_stats.nodes & (CLOCK - 1)) == 0 && System.nanoTime() >= _deadline) {
+            _stopped = true;
+        }
+        if (_stopped) {
+            return 0;
+        }
+        if (ply > _stats.depth) {
+            _stats.depth = ply;
+        }
+        boolean root = result != null;
+        boolean maximising = board.getCurrPlayer() != O;
+        if (depth == 0 || board.isGameOver()) {
+            _stats.leaves += 1;
+            return Evaluator.evaluate(board);
+        }
+
+        int symmetry = board.canonicalSymmetry();
+        long key = board.hash(symmetry);
+        int hashMove = TranspositionTable.NO_MOVE;
+        long entry = _table.probe(key);
+        _stats.probes += 1;
+        if (entry != TranspositionTable.MISS) {
+            _stats.hits += 1;
+            if (TranspositionTable.move(entry) != TranspositionTable.NO_MOVE) {
+                hashMove = board.untransform(symmetry, TranspositionTable.move(entry));
+            }
+            if (!root && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                byte bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER && score >= beta)
+                    || (bound == TranspositionTable.UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int alphaOrig = alpha;
+        int betaOrig = beta;
+        int bestScore = (maximising) ? alpha : beta;
+        int end = top + board.candidateMoves(_moves, top);
+        int side = maximising ? 0 : _cells;
+        if (_ordering) {
+            score(top, end, ply, side, hashMove);
+        }
+        int bestMove = _moves[top];
+        for (int n = top; n < end; n += 1) {
+            if (_ordering) {
+                pickNext(n, end);
+            }
+            int move = _moves[n];
+            board.makeMove(move);
+            int score;
+            if (n == top || !_ordering) {
+                score = search(board, ply + 1, end, depth - 1, alpha, beta, null);
+            } else if (maximising) {
+                score = search(board, ply + 1, end, depth - 1, alpha, alpha + 1, null);
+                if (score > alpha && score < beta) {
+                    score = search(board, ply + 1, end, depth - 1, alpha, beta, null);
+                }
+            } else {
+                score = search(board, ply + 1, end, depth - 1, beta - 1, beta, null);
+                if (score < beta && score > alpha) {
+                    score = search(board, ply + 1, end, depth - 1, alpha, beta, null);
+                }
+            }
+            board.unmakeMove();
+            if (_stopped) {
+                return 0;
+            }
+            if (maximising) {
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                    alpha = Math.max(alpha, score);
+                }
+            } else {
+                if (score < bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                    beta = Math.min(beta, score);
+                }
+            }
+            if (alpha >= beta) {
+                _stats.cutoffs += 1;
+                if (_ordering) {
+                    rememberCutoff(move, ply, side, depth);
+                }
+                break;
+            }
+        }
+
+        byte bound;
+        if (bestScore <= alphaOrig) {
+            bound = TranspositionTable.UPPER;
+        } else if (bestScore >= betaOrig) {
+            bound = TranspositionTable.LOWER;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        _table.store(key, bestScore, depth, bound, board.transform(symmetry, bestMove));
+        if (root) {
+            result.offer(bestMove, bestScore);
+        }
+        return bestScore;
+    }
+
+    /** Gives each move in _moves[TOP, END) its ordering score in _order:
+     *  the hash move highest, then the killers of PLY, then history. SIDE
+     *  is the history offset of the player to move.*/
+    private void score(int top, int end, int ply, int side, int hashMove) {
+        int killer1 = _killers[2 * ply];
+        int killer2 = _killers[2 * ply + 1];
+        for (int n = top; n < end; n += 1) {
+            int move = _moves[n];
+            if (move == hashMove) {
+                _order[n] = Integer.MAX_VALUE;
+            } else if (move == killer1) {
+                _order[n] = Integer.MAX_VALUE - 1;
+            } else if (move == killer2) {
+                _order[n] = Integer.MAX_VALUE - 2;
+            } else {
+                _order[n] = _history[side + move];
+            }
+        }
+    }
+
+    /** Swaps the best-scored move in _moves[N, END) into slot N. Selecting
+     *  one move at a time is cheaper than sorting when a cutoff comes early.*/
+    private void pickNext(int n, int end) {
+        int best = n;
+        for (int m = n + 1; m < end; m += 1) {
+            if (_order[m] > _order[best]) {
+                best = m;
+            }
+        }
+        if (best != n) {
+            int move = _moves[best];
+            int order = _order[best];
+            _moves[best] = _moves[n];
+            _order[best] = _order[n];
+            _moves[n] = move;
+            _order[n] = order;
+        }
+    }
+
+    /** Records that MOVE caused a cutoff at PLY, DEPTH plies from the
+     *  horizon, for the player whose history offset is SIDE.*/
+    private void rememberCutoff(int move, int ply, int side, int depth) {
+        if (_killers[2 * ply] != move) {
+            _killers[2 * ply + 1] = _killers[2 * ply];
+            _killers[2 * ply] = move;
+        }
+        _history[side + move] = Math.min(_history[side + move] + depth * depth, HISTORY_LIMIT);
+    }
+
+    /** Nodes between reads of the clock; a power of two.*/
+    private static final int CLOCK = 1024;
+
+    /** Largest history score, well below the killer and hash move scores.*/
+    private static final int HISTORY_LIMIT = 1 << 24;
+
+    /** Results shared across searches, keyed by canonical position.*/
+    private final TranspositionTable _table;
+
+    /** True to order moves and use null-window searches.*/
+    private final boolean _ordering;
+
+    /** Move stack; see moveStack.*/
+    private int[] _moves = new int[0];
+
+    /** Ordering score of the move in the same slot of _moves.*/
+    private int[] _order = new int[0];
+
+    /** Two killer moves per ply, at [2 * ply] and [2 * ply + 1].*/
+    private int[] _killers = new int[0];
+
+    /** Cutoff history per square, X's first and then O's.*/
+    private int[] _history = new int[0];
+
+    /** Number of squares _history is laid out for.*/
+    private int _cells;
+
+    /** Set by stop() to make runs return at once.*/
+    private volatile boolean _stopped;
+
+    /** System.nanoTime() at which runs stop; see deadline.*/
+    private long _deadline = Long.MAX_VALUE;
+
+    /** Counts for the current or last run, and for all runs.*/
+    private SearchStats _stats = new SearchStats();
+    private final SearchStats _total = new SearchStats();
+}
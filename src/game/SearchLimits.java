@@ -0,0 +1,100 @@
+package game;
+
+/** How much work an Engine may do to choose a move: a depth for alpha-beta
+ *  search, a number of iterations for Monte Carlo tree search, and a time
+ *  for either. Each engine uses the limits it understands and ignores the
+ *  rest. Immutable; the with methods return a copy.
+ *
+ *  The time is split in two. The hard time is a bound on the whole move:
+ *  a search still running then is stopped. The soft time, by default half
+ *  the hard time, is when an alpha-beta engine stops starting deeper
+ *  searches, as the next depth usually takes longer than all the ones
+ *  before it and would only be thrown away. */
+final class SearchLimits {
+
+    /** Value of a count or time that is not limited.*/
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    /** Limits searching DEPTH plies ahead.*/
+    static SearchLimits depth(int depth) {
+        return new SearchLimits(Integer.MAX_VALUE, UNLIMITED, UNLIMITED, UNLIMITED).withDepth(depth);
+    }
+
+    /** Limits Monte Carlo search to ITERATIONS playouts.*/
+    static SearchLimits iterations(long iterations) {
+        return new SearchLimits(Integer.MAX_VALUE, UNLIMITED, UNLIMITED, UNLIMITED).withIterations(iterations);
+    }
+
+    /** Limits searching to MILLIS milliseconds.*/
+    static SearchLimits millis(long millis) {
+        return new SearchLimits(Integer.MAX_VALUE, UNLIMITED, UNLIMITED, UNLIMITED).withMillis(millis);
+    }
+
+    private SearchLimits(int depth, long iterations, long millis, long softMillis) {
+        _depth = depth;
+        _iterations = iterations;
+        _millis = millis;
+        _softMillis = softMillis;
+    }
+
+    /** Returns these limits with the depth set to DEPTH, at least 1, since
+     *  a search of no plies chooses no move.*/
+    SearchLimits withDepth(int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Search depth must be at least 1.");
+        }
+        return new SearchLimits(depth, _iterations, _millis, _softMillis);
+    }
+
+    /** Returns these limits with the number of playouts set to ITERATIONS.*/
+    SearchLimits withIterations(long iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Need at least one iteration.");
+        }
+        return new SearchLimits(_depth, iterations, _millis, _softMillis);
+    }
+
+    /** Returns these limits with the hard time set to MILLIS milliseconds.*/
+    SearchLimits withMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("Need at least one millisecond.");
+        }
+        return new SearchLimits(_depth, _iterations, millis, _softMillis);
+    }
+
+    /** Returns these limits with the soft time set to MILLIS milliseconds.*/
+    SearchLimits withSoftMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Soft time must not be negative.");
+        }
+        return new SearchLimits(_depth, _iterations, _millis, millis);
+    }
+
+    /** Number of plies to search; Integer.MAX_VALUE to search to the end of the game.*/
+    int depth() {
+        return _depth;
+    }
+
+    /** Number of playouts, or UNLIMITED.*/
+    long iterations() {
+        return _iterations;
+    }
+
+    /** Hard time allowed in milliseconds, or UNLIMITED.*/
+    long millis() {
+        return _millis;
+    }
+
+    /** Soft time in milliseconds: the one set, or else half the hard time,
+     *  but never more than the hard time. UNLIMITED if neither is set.*/
+    long softMillis() {
+        if (_softMillis == UNLIMITED) {
+            return (_millis == UNLIMITED) ? UNLIMITED : _millis / 2;
+        }
+        return Math.min(_softMillis, _millis);
+    }
+
+    /** See the accessors.*/
+    private final int _depth;
+    private final long _iterations, _millis, _softMillis;
+}
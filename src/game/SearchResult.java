@@ -0,0 +1,93 @@
+package game;
+
+/** The best root move (a square number) found by a search and its score. Several search
+ *  threads may offer moves at once; the best one for the player to move
+ *  wins. This replaces handing the move back through a static field. */
+final class SearchResult {
+
+    /** Move reported before any move has been offered.*/
+    static final int NO_MOVE = -1;
+
+    /** Creates an empty result for a search where the player to move is
+     *  maximising (X) or not (O).*/
+    SearchResult(boolean maximising) {
+        _maximising = maximising;
+    }
+
+    /** Records MOVE with SCORE if it beats the best move so far, or if there
+     *  is none yet. Returns true if it was kept.*/
+    synchronized boolean offer(int move, int score) {
+        if (_move == NO_MOVE || (_maximising ? score > _score : score < _score)) {
+            _move = move;
+            _score = score;
+            return true;
+        }
+        return false;
+    }
+
+    /** Best move so far, or NO_MOVE if none has been offered.*/
+    synchronized int move() {
+        return _move;
+    }
+
+    /** Score of the best move so far. Only meaningful once a move has been offered.*/
+    synchronized int score() {
+        return _score;
+    }
+
+    /** Returns the best score so far as an alpha bound for a maximising
+     *  search, or a beta bound for a minimising one, or the loosest bound
+     *  if nothing has been offered yet.*/
+    synchronized int bound() {
+        if (_move == NO_MOVE) {
+            return _maximising ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        }
+        return _score;
+    }
+
+    /** Adds the counts in STATS, from one search reporting into this result.*/
+    synchronized void add(SearchStats stats) {
+        _stats.add(stats);
+    }
+
+    /** Number of nodes searched by everything that has reported into this result.*/
+    synchronized long nodes() {
+        return _stats.nodes;
+    }
+
+    /** Returns a copy of the counts of everything that has reported into this result.*/
+    synchronized SearchStats stats() {
+        return _stats.copy();
+    }
+
+    /** Marks this result as coming from a search that was stopped before it
+     *  finished, so its move and score are not to be trusted.*/
+    void abandon() {
+        _abandoned = true;
+    }
+
+    /** True if abandon() has been called.*/
+    boolean abandoned() {
+        return _abandoned;
+    }
+
+    /** True if X is to move at the root.*/
+    boolean maximising() {
+        return _maximising;
+    }
+
+    /** True if X is to move at the root.*/
+    private final boolean _maximising;
+
+    /** Best move so far.*/
+    private int _move = NO_MOVE;
+
+    /** Score of _move.*/
+    private int _score;
+
+    /** Set by abandon().*/
+    private volatile boolean _abandoned;
+
+    /** Counts reported so far.*/
+    private final SearchStats _stats = new SearchStats();
+}
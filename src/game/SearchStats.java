@@ -0,0 +1,60 @@
+package game;
+
+/** What one search did: nodes visited, leaves evaluated, cutoffs,
+ *  transposition table probes and hits, the deepest ply reached below the
+ *  root and the time taken. A Search counts into one of these as it goes,
+ *  with plain fields since a Search belongs to one thread; the counts of
+ *  several threads are summed into the SearchResult afterwards, and the
+ *  Engine fills in the time. Not thread-safe. */
+final class SearchStats {
+
+    /** Empty stats.*/
+    SearchStats() {
+    }
+
+    /** Stats for a move found without alpha-beta search, in NODES nodes or playouts.*/
+    SearchStats(long nodes) {
+        this.nodes = nodes;
+    }
+
+    /** Returns a copy of these stats.*/
+    SearchStats copy() {
+        SearchStats copy = new SearchStats();
+        copy.add(this);
+        return copy;
+    }
+
+    /** Adds OTHER's counts and time to these, keeping the deeper depth.*/
+    void add(SearchStats other) {
+        nodes += other.nodes;
+        leaves += other.leaves;
+        cutoffs += other.cutoffs;
+        probes += other.probes;
+        hits += other.hits;
+        nanos += other.nanos;
+        depth = Math.max(depth, other.depth);
+    }
+
+    /** Nodes searched per second, or 0 if no time was recorded.*/
+    long nodesPerSecond() {
+        return (nanos == 0) ? 0 : (long) (nodes * 1e9 / nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d nodes, %d leaves, %d cutoffs, %d/%d table hits, depth %d, %.3f ms, %d nodes/s",
+                             nodes, leaves, cutoffs, hits, probes, depth, nanos / 1e6, nodesPerSecond());
+    }
+
+    /** Nodes visited, leaves evaluated, and nodes cut off by a bound.*/
+    long nodes, leaves, cutoffs;
+
+    /** Transposition table probes, and probes that found their position.*/
+    long probes, hits;
+
+    /** Deepest ply reached below the root.*/
+    int depth;
+
+    /** Time taken, in nanoseconds, or 0 if not recorded.*/
+    long nanos;
+}
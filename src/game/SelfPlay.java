@@ -0,0 +1,157 @@
+package game;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static game.Piece.*;
+
+/** Plays many games between two players without any console output, spread
+ *  over several threads, and totals up the results. Each thread has its own
+ *  board, move stack, engine and random number generator, and
+ *  reuses them from game to game, so threads share nothing until their
+ *  totals are merged at the end. Used to regression-test the engine. */
+final class SelfPlay {
+
+    /** Who picks the moves for one side.*/
+    enum Player {
+        /** A uniformly random legal move.*/
+        RANDOM,
+        /** An alpha-beta Engine searching to the configured depth.*/
+        ENGINE,
+        /** A Monte Carlo Engine within the configured iterations or time.*/
+        MCTS
+    }
+
+    /** Totals over a batch of games.*/
+    static final class Stats {
+        /** Games won by X, won by O and drawn, moves played in all of them,
+         *  and nodes searched (or MCTS playouts run) by engine players.*/
+        long xWins, oWins, draws, moves, nodes;
+
+        /** Adds OTHER's totals to these.*/
+        void add(Stats other) {
+            xWins += other.xWins;
+            oWins += other.oWins;
+            draws += other.draws;
+            moves += other.moves;
+            nodes += other.nodes;
+        }
+
+        /** Number of games played.*/
+        long games() {
+            return xWins + oWins + draws;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d games: X won %d, O won %d, %d draws, %.2f moves per game, %d nodes searched",
+                                 games(), xWins, oWins, draws, (double) moves / Math.max(1, games()), nodes);
+        }
+    }
+
+    /** Sets up self-play on ROWS x COLS boards needing K in a row, with X and
+     *  O played by the given players. ENGINE and MCTS players search within
+     *  LIMITS, ENGINE players with move ordering unless ORDERING is false.*/
+    SelfPlay(int rows, int cols, int k, Player x, Player o, SearchLimits limits, boolean ordering) {
+        Lines.forShape(rows, cols, k);
+        _rows = rows;
+        _cols = cols;
+        _k = k;
+        _x = x;
+        _o = o;
+        _limits = limits;
+        _ordering = ordering;
+    }
+
+    /** Plays GAMES games on THREADS threads. Random players on thread t are
+     *  seeded from SEED and t, so a run can be repeated exactly.*/
+    Stats run(long games, int threads, long seed) throws InterruptedException, IOException {
+        return run(games, threads, seed, null);
+    }
+
+    /** As run(GAMES, THREADS, SEED), also handing every game to LOG unless
+     *  it is null, e.g. to grow an opening book from them later.*/
+    Stats run(long games, int threads, long seed, GameLog.Sink log) throws InterruptedException, IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            SplittableRandom seeds = new SplittableRandom(seed);
+            List<Future<Stats>> parts = new ArrayList<>();
+            for (int t = 0; t < threads; t += 1) {
+                long share = games / threads + ((t < games % threads) ? 1 : 0);
+                SplittableRandom random = seeds.split();
+                parts.add(pool.submit(() -> play(share, random, log)));
+            }
+            Stats total = new Stats();
+            for (Future<Stats> part : parts) {
+                total.add(part.get());
+            }
+            return total;
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof IOException) {
+                throw (IOException) error.getCause();
+            }
+            throw new IllegalStateException("A self-play thread failed.", error.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Plays GAMES games on the calling thread, handing them to LOG unless it is null.*/
+    private Stats play(long games, SplittableRandom random, GameLog.Sink log) throws IOException {
+        Stats stats = new Stats();
+        Board board = new Board(_rows, _cols, _k);
+        int[] moves = Search.moveStack(board);
+        int[] played = new int[board.cells()];
+        Engine engine = new Engine(new Search(new HeapTable(1 << 16), _ordering), null, null);
+        Engine mcts = new Engine(new Mcts(1));
+        for (long g = 0; g < games; g += 1) {
+            while (!board.isGameOver()) {
+                Player player = (board.getCurrPlayer() == X) ? _x : _o;
+                int move;
+                if (player == Player.RANDOM) {
+                    int count = board.legalMoves(moves, 0);
+                    move = moves[random.nextInt(count)];
+                } else {
+                    Move best = ((player == Player.MCTS) ? mcts : engine).bestMove(board, _limits);
+                    stats.nodes += best.nodes();
+                    move = best.square();
+                }
+                played[board.historySize()] = move;
+                board.makeMove(move);
+            }
+            if (log != null) {
+                log.write(_rows, _cols, _k, played, board.historySize());
+            }
+            if (board.getWinner() == X) {
+                stats.xWins += 1;
+            } else if (board.getWinner() == O) {
+                stats.oWins += 1;
+            } else {
+                stats.draws += 1;
+            }
+            stats.moves += board.historySize();
+            while (board.historySize() > 0) {
+                board.unmakeMove();
+            }
+        }
+        return stats;
+    }
+
+    /** Board shape.*/
+    private final int _rows, _cols, _k;
+
+    /** Players for X and O.*/
+    private final Player _x, _o;
+
+    /** Limits on ENGINE and MCTS players.*/
+    private final SearchLimits _limits;
+
+    /** Whether ENGINE players order moves.*/
+    private final boolean _ordering;
+}
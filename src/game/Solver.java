@@ -0,0 +1,418 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static game.Piece.*;
+
+/** Proves the result of positions too big to search to the end with
+ *  alpha-beta, by depth-first proof-number search (df-pn). A position is
+ *  solved with two proofs, "X can force a win" and "O can force a win";
+ *  if neither holds, it is a draw.
+ *
+ *  Every node carries two numbers from the point of view of the player to
+ *  move, who is trying to reach their goal in that proof (the attacker's
+ *  goal is to win; the defender's is to stop the attacker winning): phi,
+ *  the least number of positions still to be proved to show the goal can
+ *  be reached, and delta, the same for showing it cannot. A node's phi is
+ *  the smallest delta of its children and its delta the sum of their phis;
+ *  phi 0 is a proof and delta 0 a disproof. The search always descends
+ *  into the child with the smallest delta, within thresholds that send it
+ *  back up as soon as another child looks cheaper, and with the "1 + 1/4"
+ *  widening of the second threshold so it does not switch back and forth
+ *  between two children too often.
+ *
+ *  Numbers are kept in a fixed-size table keyed by canonical hash, so
+ *  memory is bounded whatever the board; a slot goes to whichever of its
+ *  two candidates took more work to compute. The table is the solver's
+ *  whole state: saved, it is both a checkpoint that a long solve resumes
+ *  from, and the solution an Engine loads to play perfectly. Not
+ *  thread-safe; methods are synchronized. */
+final class Solver implements PerfectPlay {
+
+    /** File header: magic number and format version.*/
+    private static final int MAGIC = 0x54545453, VERSION = 2;
+
+    /** Bytes per table entry: key, phi, delta and work.*/
+    private static final int ENTRY = 20;
+
+    /** Proof or disproof number of a proved or disproved node.*/
+    private static final int INF = 1 << 30;
+
+    /** Marks the key of the proof that O can win, as opposed to X.*/
+    private static final long O_GOAL = 0x9E3779B97F4A7C15L;
+
+    /** Nodes between checks of the checkpoint clock.*/
+    private static final int CLOCK = 1 << 12;
+
+    /** Returns the default solution file for ROWS x COLS boards needing K in a row.*/
+    static Path fileFor(int rows, int cols, int k) {
+        return Paths.get("solve-" + rows + "x" + cols + "-" + k + ".bin");
+    }
+
+    /** Creates a solver for ROWS x COLS boards needing K in a row, with a
+     *  table of MEGABYTES, rounded down to a power of two of entries.*/
+    Solver(int rows, int cols, int k, long megabytes) {
+        this(rows, cols, k, (int) Math.min(Long.highestOneBit(Math.max(megabytes, 1) * (1 << 20) / ENTRY),
+                                           1 << 30));
+    }
+
+    private Solver(int rows, int cols, int k, int entries) {
+        Lines.forShape(rows, cols, k);
+        _rows = rows;
+        _cols = cols;
+        _k = k;
+        _mask = entries - 1;
+        _keys = new long[entries];
+        _phi = new int[entries];
+        _delta = new int[entries];
+        _work = new int[entries];
+    }
+
+    /** Reads a solver saved by save().*/
+    static Solver load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a solver table.");
+            }
+            int rows = in.readInt();
+            int cols = in.readInt();
+            int k = in.readInt();
+            int entries = in.readInt();
+            int used = in.readInt();
+            if (Integer.bitCount(entries) != 1) {
+                throw new IOException(file + " is not a solver table.");
+            }
+            Solver solver = new Solver(rows, cols, k, entries);
+            for (int n = 0; n < used; n += 1) {
+                int slot = in.readInt() & solver._mask;
+                solver._keys[slot] = in.readLong();
+                solver._phi[slot] = in.readInt();
+                solver._delta[slot] = in.readInt();
+                solver._work[slot] = in.readInt();
+            }
+            return solver;
+        }
+    }
+
+    /** Writes the table to FILE, through a temporary file so that a crash
+     *  while writing leaves the previous checkpoint. The file is a header
+     *  (magic number, version, rows, cols, k, table size and number of
+     *  entries used, all ints) and then each used entry: its slot, key,
+     *  phi, delta and work.*/
+    synchronized void save(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_rows);
+            out.writeInt(_cols);
+            out.writeInt(_k);
+            out.writeInt(_keys.length);
+            int used = 0;
+            for (int work : _work) {
+                used += (work == 0) ? 0 : 1;
+            }
+            out.writeInt(used);
+            for (int n = 0; n < _keys.length; n += 1) {
+                if (_work[n] != 0) {
+                    out.writeInt(n);
+                    out.writeLong(_keys[n]);
+                    out.writeInt(_phi[n]);
+                    out.writeInt(_delta[n]);
+                    out.writeInt(_work[n]);
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Makes solve() save the table to FILE every SECONDS seconds, or stop
+     *  doing so if FILE is null.*/
+    synchronized void checkpoint(Path file, long seconds) {
+        _checkpoint = file;
+        _interval = seconds * 1000000000L;
+        _nextCheckpoint = System.nanoTime() + _interval;
+    }
+
+    /** Stops engine probes after NODES nodes each, so that a position
+     *  the table knows little about costs a bounded time.*/
+    synchronized void probeLimit(long nodes) {
+        _probeLimit = nodes;
+    }
+
+    /** Returns the result of BOARD under perfect play, X_WINS, DRAW or
+     *  O_WINS, however long it takes. BOARD is left as it was.*/
+    synchronized int solve(Board board) {
+        return solve(board, Long.MAX_VALUE);
+    }
+
+    /** Number of nodes expanded over the solver's lifetime.*/
+    synchronized long nodes() {
+        return _nodes;
+    }
+
+    @Override
+    public synchronized int result(Board board) {
+        if (!fits(board)) {
+            return UNKNOWN;
+        }
+        return solve(board, _probeLimit);
+    }
+
+    @Override
+    public synchronized int bestMove(Board board) {
+        if (!fits(board) || board.isGameOver()) {
+            return -1;
+        }
+        int result = solve(board, _probeLimit);
+        if (result == UNKNOWN) {
+            return -1;
+        }
+        int[] moves = new int[board.cells()];
+        int count = board.legalMoves(moves, 0);
+        int keeping = -1;
+        for (int n = 0; n < count; n += 1) {
+            board.makeMove(moves[n]);
+            boolean won = board.getWinner() != null;
+            int after = (won || keeping >= 0) ? UNKNOWN : solve(board, _probeLimit);
+            board.unmakeMove();
+            if (won) {
+                return moves[n];
+            }
+            if (after == result) {
+                keeping = moves[n];
+            }
+        }
+        return keeping;
+    }
+
+    /** True if BOARD has the shape this solver is for.*/
+    private boolean fits(Board board) {
+        return board.rows() == _rows && board.cols() == _cols && board.k() == _k;
+    }
+
+    /** Returns the result of BOARD, or UNKNOWN if that takes more than LIMIT nodes.*/
+    private int solve(Board board, long limit) {
+        if (board.getWinner() == X) {
+            return X_WINS;
+        } else if (board.getWinner() == O) {
+            return O_WINS;
+        } else if (board.inTie()) {
+            return DRAW;
+        }
+        if (_stack.length < Search.moveStack(board).length) {
+            _stack = Search.moveStack(board);
+            _childKeys = new long[_stack.length];
+            _terminal = new long[_stack.length];
+        }
+        _limit = (limit == Long.MAX_VALUE) ? Long.MAX_VALUE : _nodes + limit;
+        _aborted = false;
+        int x = prove(board, X);
+        if (x == UNKNOWN || x == X_WINS) {
+            return x;
+        }
+        int o = prove(board, O);
+        if (o == UNKNOWN || o == O_WINS) {
+            return o;
+        }
+        return DRAW;
+    }
+
+    /** Returns ATTACKER's win (X_WINS or O_WINS) if ATTACKER can force a
+     *  win from BOARD, DRAW if not, or UNKNOWN if the node limit is reached.*/
+    private int prove(Board board, Piece attacker) {
+        long key = key(board, attacker);
+        long values = lookup(key);
+        if ((int) (values >>> 32) != 0 && (int) values != 0) {
+            values = mid(board, 0, attacker, key, INF, INF);
+        }
+        if (_aborted) {
+            return UNKNOWN;
+        }
+        int phi = (int) (values >>> 32);
+        boolean wins = (board.getCurrPlayer() == attacker) ? phi == 0 : phi == INF;
+        if (!wins) {
+            return DRAW;
+        }
+        return (attacker == X) ? X_WINS : O_WINS;
+    }
+
+    /** Searches BOARD, a position that is not over with key KEY in the
+     *  proof for ATTACKER, until its phi reaches THPHI or its delta THDELTA,
+     *  and returns phi and delta packed as (phi << 32 | delta). Children
+     *  are generated into _stack from TOP up.*/
+    private long mid(Board board, int top, Piece attacker, long key, int thPhi, int thDelta) {
+        _nodes += 1;
+        long startNodes = _nodes;
+        if (_nodes >= _limit) {
+            _aborted = true;
+        }
+        if ((_nodes & (CLOCK - 1)) == 0 && _checkpoint != null && System.nanoTime() >= _nextCheckpoint) {
+            try {
+                save(_checkpoint);
+            } catch (IOException error) {
+                throw new UncheckedIOException(error);
+            }
+            _nextCheckpoint = System.nanoTime() + _interval;
+        }
+
+        int end = top + board.legalMoves(_stack, top);
+        for (int n = top; n < end; n += 1) {
+            board.makeMove(_stack[n]);
+            _terminal[n] = terminal(board, attacker);
+            _childKeys[n] = (_terminal[n] < 0) ? key(board, attacker) : 0;
+            board.unmakeMove();
+        }
+
+        int phi;
+        int delta;
+        while (true) {
+            long sum = 0;
+            int best = top;
+            int bestDelta = INF;
+            int secondDelta = INF;
+            int bestPhi = 0;
+            for (int n = top; n < end; n += 1) {
+                long child = (_terminal[n] >= 0) ? _terminal[n] : lookup(_childKeys[n]);
+                int childPhi = (int) (child >>> 32);
+                int childDelta = (int) child;
+                sum += childPhi;
+                if (childDelta < bestDelta) {
+                    secondDelta = bestDelta;
+                    bestDelta = childDelta;
+                    bestPhi = childPhi;
+                    best = n;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+            }
+            phi = bestDelta;
+            if (sum < INF) {
+                delta = (int) sum;
+            } else {
+                delta = hasInfinite(top, end) ? INF : INF - 1;
+            }
+            if (phi >= thPhi || delta >= thDelta || _aborted) {
+                break;
+            }
+            int childThPhi = (int) Math.min((long) thDelta - delta + bestPhi, INF);
+            int childThDelta = (int) Math.min(thPhi, Math.max(secondDelta + 1L, secondDelta + secondDelta / 4L));
+            board.makeMove(_stack[best]);
+            mid(board, end, attacker, _childKeys[best], childThPhi, childThDelta);
+            board.unmakeMove();
+        }
+        store(key, phi, delta, _nodes - startNodes + 1);
+        return ((long) phi << 32) | delta;
+    }
+
+    /** True if a child in _stack[TOP, END) has an infinite phi, which makes
+     *  their parent's delta infinite.*/
+    private boolean hasInfinite(int top, int end) {
+        for (int n = top; n < end; n += 1) {
+            long child = (_terminal[n] >= 0) ? _terminal[n] : lookup(_childKeys[n]);
+            if ((int) (child >>> 32) >= INF) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the packed phi and delta of BOARD, just reached, if its
+     *  result is already settled, or -1. The player to move has lost if
+     *  there is a winner, and has won if they have a line one move from
+     *  complete. A tie, or a position where the attacker has no line left
+     *  free of the defender's pieces, is a loss for the attacker and a win
+     *  for the defender.*/
+    private static long terminal(Board board, Piece attacker) {
+        Piece mover = board.getCurrPlayer();
+        if (board.getWinner() != null) {
+            return (long) INF << 32;
+        } else if (board.k() > 1 && board.openLines(mover, board.k() - 1) > 0) {
+            return INF;
+        } else if (board.inTie() || !live(board, attacker)) {
+            return (mover == attacker) ? (long) INF << 32 : INF;
+        }
+        return -1;
+    }
+
+    /** True if PLAYER still has a line free of the opponent's pieces.*/
+    private static boolean live(Board board, Piece player) {
+        for (int j = 0; j < board.k(); j += 1) {
+            if (board.openLines(player, j) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Key of BOARD's position in the proof for ATTACKER.*/
+    private static long key(Board board, Piece attacker) {
+        long key = board.hash(board.canonicalSymmetry());
+        return (attacker == O) ? key ^ O_GOAL : key;
+    }
+
+    /** Returns the packed phi and delta stored for KEY, or 1 and 1 if none are.*/
+    private long lookup(long key) {
+        int slot = (int) key & _mask & ~1;
+        if (_work[slot] != 0 && _keys[slot] == key) {
+            return ((long) _phi[slot] << 32) | _delta[slot];
+        }
+        if (_work[slot + 1] != 0 && _keys[slot + 1] == key) {
+            return ((long) _phi[slot + 1] << 32) | _delta[slot + 1];
+        }
+        return (1L << 32) | 1;
+    }
+
+    /** Stores PHI and DELTA for KEY, which took WORK nodes to compute, in
+     *  its slot or the other slot of its pair, replacing whichever entry
+     *  took less work, unless both took more.*/
+    private void store(long key, int phi, int delta, long work) {
+        int slot = (int) key & _mask & ~1;
+        if (_work[slot] != 0 && _keys[slot] != key
+            && (_keys[slot + 1] == key || _work[slot + 1] < _work[slot])) {
+            slot += 1;
+        }
+        if (_keys[slot] == key || _work[slot] <= work || phi == 0 || delta == 0) {
+            _keys[slot] = key;
+            _phi[slot] = phi;
+            _delta[slot] = delta;
+            _work[slot] = (int) Math.min(work, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Board shape.*/
+    private final int _rows, _cols, _k;
+
+    /** Table: slot index mask, and per slot the key, phi, delta and the
+     *  nodes it took to compute them (0 for an empty slot).*/
+    private final int _mask;
+    private final long[] _keys;
+    private final int[] _phi, _delta, _work;
+
+    /** Children of the nodes on the current path, their keys, and their
+     *  packed phi and delta if they are over (-1 if not).*/
+    private int[] _stack = new int[0];
+    private long[] _childKeys = new long[0];
+    private long[] _terminal = new long[0];
+
+    /** Nodes expanded so far, the count at which the current solve stops,
+     *  and whether it has.*/
+    private long _nodes, _limit;
+    private boolean _aborted;
+
+    /** Node limit for engine probes.*/
+    private long _probeLimit = 1 << 15;
+
+    /** Where and how often to save checkpoints, and when the next is due.*/
+    private Path _checkpoint;
+    private long _interval, _nextCheckpoint;
+}
@@ -0,0 +1,178 @@
+package game;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static game.Piece.*;
+
+/** Perfect-play table for the 3x3 board. Every position is encoded as a
+ *  base-3 number over its nine squares (0 empty, 1 x, 2 o, square i being
+ *  digit i), giving 3^9 = 19683 one-byte entries. An entry holds the
+ *  game-theoretic result in bits 4-5 and the best move for the player to
+ *  move (a square number, or 0xF if none) in bits 0-3. Unreachable
+ *  positions have result UNKNOWN.
+ *
+ *  The table is built once by generate() and written to disk; open() only
+ *  memory-maps the file, so a lookup is two array reads and a byte get. */
+class Tablebase implements PerfectPlay {
+
+    /** Name of the tablebase file in the working directory.*/
+    static final String DEFAULT_FILE = "tablebase-3x3.bin";
+
+    /** File header: magic number and format version.*/
+    private static final int MAGIC = 0x54545442, VERSION = 1, HEADER = 8;
+
+    /** Number of positions in the table.*/
+    private static final int POSITIONS = 19683;
+
+    /** Marks an entry with no best move.*/
+    private static final int NO_MOVE = 0xF;
+
+    /** TERNARY[mask] is the sum of 3^i over the squares i set in a 9-bit mask.*/
+    private static final int[] TERNARY = new int[1 << 9];
+
+    static {
+        for (int mask = 1; mask < TERNARY.length; mask += 1) {
+            int low = Integer.numberOfTrailingZeros(mask);
+            int power = 1;
+            for (int i = 0; i < low; i += 1) {
+                power *= 3;
+            }
+            TERNARY[mask] = TERNARY[mask & (mask - 1)] + power;
+        }
+    }
+
+    /** Mapped table entries, starting after the header.*/
+    private final ByteBuffer _entries;
+
+    private Tablebase(ByteBuffer entries) {
+        _entries = entries;
+    }
+
+    /** Returns the tablebase in FILE, generating the file first if it does not exist.*/
+    static Tablebase load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            generate(file);
+        }
+        return open(file);
+    }
+
+    /** Memory-maps an existing tablebase file.*/
+    static Tablebase open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER + POSITIONS) {
+                throw new IOException(file + " is not a 3x3 tablebase.");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a 3x3 tablebase.");
+            }
+            map.position(HEADER);
+            return new Tablebase(map.slice());
+        }
+    }
+
+    /** Returns the table index of BOARD's position.*/
+    static int index(Board board) {
+        return TERNARY[(int) board.bitboard(X)] + 2 * TERNARY[(int) board.bitboard(O)];
+    }
+
+    /** Returns the result of BOARD under perfect play: X_WINS, DRAW, O_WINS,
+     *  or UNKNOWN if BOARD is not 3x3 with 3 in a row or the position cannot
+     *  arise in a game starting from empty.*/
+    @Override
+    public int result(Board board) {
+        if (!covers(board)) {
+            return UNKNOWN;
+        }
+        return (_entries.get(index(board)) >> 4) & 3;
+    }
+
+    /** Returns the square of a perfect move for the player to move in BOARD,
+     *  or -1 if the game is over or the position is not in the table.*/
+    @Override
+    public int bestMove(Board board) {
+        if (!covers(board) || board.getCurrPlayer() != sideToMove(board)) {
+            return -1;
+        }
+        int move = _entries.get(index(board)) & NO_MOVE;
+        return (move == NO_MOVE) ? -1 : move;
+    }
+
+    /** True if BOARD has the table's shape, 3x3 with 3 in a row.*/
+    private static boolean covers(Board board) {
+        return board.rows() == 3 && board.cols() == 3 && board.k() == 3;
+    }
+
+    /** Returns the player to move in BOARD if the game started from empty with X.*/
+    private static Piece sideToMove(Board board) {
+        return (Long.bitCount(board.bitboard(X)) > Long.bitCount(board.bitboard(O))) ? O : X;
+    }
+
+    /** Solves every position reachable from the empty board and writes the table to FILE.*/
+    static void generate(Path file) throws IOException {
+        byte[] entries = new byte[POSITIONS];
+        solve(new Board(), entries, new byte[POSITIONS]);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putInt(VERSION);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+            out.write(header.array());
+            out.write(entries);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Returns the score of BOARD for the player to move: positive for a win,
+     *  negative for a loss, 0 for a draw. Quicker wins and slower losses
+     *  score further from 0. Fills ENTRIES and memoizes scores in SCORES,
+     *  offset by 64 so that 0 means unsolved.*/
+    private static int solve(Board board, byte[] entries, byte[] scores) {
+        int index = index(board);
+        if (scores[index] != 0) {
+            return scores[index] - 64;
+        }
+        int empties = 9 - board.historySize();
+        int best;
+        int bestMove = NO_MOVE;
+        if (board.getWinner() != null) {
+            best = -(empties + 1);
+        } else if (board.inTie()) {
+            best = 0;
+        } else {
+            best = Integer.MIN_VALUE;
+            for (int square = 0; square < 9; square += 1) {
+                if (board.get(square / 3, square % 3) != EMP) {
+                    continue;
+                }
+                board.makeMove(square);
+                int score = -solve(board, entries, scores);
+                board.unmakeMove();
+                if (score > best) {
+                    best = score;
+                    bestMove = square;
+                }
+            }
+        }
+
+        int result;
+        if (best == 0) {
+            result = DRAW;
+        } else if ((best > 0) == (board.getCurrPlayer() == X)) {
+            result = X_WINS;
+        } else {
+            result = O_WINS;
+        }
+        entries[index] = (byte) ((result << 4) | bestMove);
+        scores[index] = (byte) (best + 64);
+        return best;
+    }
+}
@@ -0,0 +1,95 @@
+package game;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/** Draws boards as text, top row first, e.g. for 3x3:
+ *  <pre>
+ *  -------
+ *  |x| |o|
+ *  -------
+ *  | |x| |
+ *  -------
+ *  |o| | |
+ *  -------
+ *  </pre>
+ *  Rules are as wide as the rows, so any board shape lines up. A whole
+ *  frame is laid out in a buffer, kept between frames and grown only for a
+ *  bigger board, and written to the stream in one call. */
+final class TextRenderer implements Renderer {
+
+    /** Renderer writing to standard output.*/
+    static final TextRenderer CONSOLE = new TextRenderer(System.out);
+
+    /** Creates a renderer writing frames to OUT.*/
+    TextRenderer(OutputStream out) {
+        _out = out;
+    }
+
+    @Override
+    public synchronized void render(Board board) {
+        int length = layout(board);
+        try {
+            _out.write(_frame, 0, length);
+            _out.flush();
+        } catch (IOException error) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /** Returns BOARD as it would be drawn.*/
+    synchronized String frame(Board board) {
+        int length = layout(board);
+        return new String(_frame, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    /** Lays out BOARD in _frame, growing it if needed, and returns the frame's length.*/
+    private int layout(Board board) {
+        int rows = board.rows();
+        int cols = board.cols();
+        int width = 2 * cols + 2;
+        int length = (2 * rows + 2) * width;
+        if (_frame.length < length) {
+            _frame = new byte[length];
+        }
+        int at = rule(0, width);
+        for (int row = rows - 1; row >= 0; row -= 1) {
+            for (int col = 0; col < cols; col += 1) {
+                _frame[at] = '|';
+                _frame[at + 1] = SYMBOLS[board.get(col, row).ordinal()];
+                at += 2;
+            }
+            _frame[at] = '|';
+            _frame[at + 1] = '\n';
+            at = rule(at + 2, width);
+        }
+        return at;
+    }
+
+    /** Writes a rule of WIDTH - 1 dashes and a newline at _frame[AT] and
+     *  returns the index after it.*/
+    private int rule(int at, int width) {
+        for (int n = 0; n < width - 1; n += 1) {
+            _frame[at + n] = '-';
+        }
+        _frame[at + width - 1] = '\n';
+        return at + width;
+    }
+
+    /** Symbol for each Piece, by ordinal.*/
+    private static final byte[] SYMBOLS = new byte[Piece.values().length];
+
+    static {
+        for (Piece piece : Piece.values()) {
+            SYMBOLS[piece.ordinal()] = (byte) piece.abbrev().charAt(0);
+        }
+    }
+
+    /** Where frames go.*/
+    private final OutputStream _out;
+
+    /** Frame buffer, reused from frame to frame.*/
+    private byte[] _frame = new byte[0];
+}
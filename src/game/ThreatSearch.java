@@ -0,0 +1,259 @@
+package game;
+
+import static game.Piece.*;
+
+/** Threat-space search: looks for a win the player to move can force with
+ *  threats alone, before a general search would look far enough ahead to
+ *  see it. On a Gomoku-size board such wins are often a dozen moves deep,
+ *  but each threat leaves the opponent one reply or a handful, so they
+ *  can be found in a few thousand nodes.
+ *
+ *  A four is a move after which the attacker has a square that completes
+ *  a line; the defender must take it. A three is a move after which the
+ *  attacker has a move that makes two fours at once; the defender must
+ *  stop it by playing on one of the lines with all but two of the
+ *  attacker's pieces, or make a four of its own. Only those replies are
+ *  searched, since after any other the attacker plays the double four.
+ *  A move making two fours at once wins outright. The defender's own
+ *  fours are answered, with a threat if possible. So every win found is
+ *  real, though a win needing quiet moves is not found. Not thread-safe. */
+final class ThreatSearch {
+
+    /** Creates a search that gives up after NODES positions or DEPTH
+     *  threats, trying threes as well as fours if THREES.*/
+    ThreatSearch(long nodes, int depth, boolean threes) {
+        _limit = nodes;
+        _depth = depth;
+        _threes = threes;
+    }
+
+    /** Returns a square on which the player to move in BOARD starts a
+     *  forced win, or -1 if none is found within the limits. Looks for
+     *  wins with one threat, then two, and so on, so the shortest is found
+     *  and a long hopeless line cannot use up the nodes first. BOARD is
+     *  left as it was.*/
+    int winningMove(Board board) {
+        _nodes = 0;
+        if (board.isGameOver()) {
+            return -1;
+        }
+        if (_lines != Lines.forShape(board.rows(), board.cols(), board.k())) {
+            _lines = Lines.forShape(board.rows(), board.cols(), board.k());
+            _allLines = new int[_lines.count];
+            for (int l = 0; l < _lines.count; l += 1) {
+                _allLines[l] = l;
+            }
+        }
+        _attacker = board.getCurrPlayer();
+        _defender = (_attacker == X) ? O : X;
+        int cells = board.cells();
+        if (_mark.length != cells) {
+            _mark = new int[cells];
+            _stamp = 0;
+        }
+        if (_stack.length < cells * (2 * _depth + 6)) {
+            _stack = new int[cells * (2 * _depth + 6)];
+        }
+        for (int depth = 1; depth <= _depth && _nodes <= _limit; depth += 1) {
+            int move = attack(board, depth, _allLines, 0);
+            if (move >= 0) {
+                return move;
+            }
+        }
+        return -1;
+    }
+
+    /** Positions visited by the last call of winningMove.*/
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Returns a square on which _attacker, to move in BOARD, starts a win
+     *  with at most DEPTH more threats before a move making two fours, or
+     *  -1. Only LINES can hold a square that wins at once for either
+     *  side: every line at the start, and after that the lines through the
+     *  defender's last move. Squares are collected into _stack from TOP up.*/
+    private int attack(Board board, int depth, int[] lines, int top) {
+        _nodes += 1;
+        if (_nodes > _limit) {
+            return -1;
+        }
+        if (winningSquares(board, _attacker, lines, top) > 0) {
+            return _stack[top];
+        }
+        int blocks = winningSquares(board, _defender, lines, top);
+        if (blocks > 1) {
+            return -1;
+        } else if (blocks == 1) {
+            int block = _stack[top];
+            return threat(board, block, depth, top) ? block : -1;
+        }
+        int end = top + threatSquares(board, _attacker, _threes ? _lines.k - 3 : _lines.k - 2, false, top);
+        for (int n = top; n < end; n += 1) {
+            if (foursMadeBy(board, _stack[n], _attacker) > 1) {
+                return _stack[n];
+            }
+        }
+        if (depth <= 0) {
+            return -1;
+        }
+        for (int n = top; n < end; n += 1) {
+            if (foursMadeBy(board, _stack[n], _attacker) == 1 && threat(board, _stack[n], depth, end)) {
+                return _stack[n];
+            }
+        }
+        for (int n = top; _threes && n < end; n += 1) {
+            if (foursMadeBy(board, _stack[n], _attacker) == 0 && threat(board, _stack[n], depth, end)) {
+                return _stack[n];
+            }
+        }
+        return -1;
+    }
+
+    /** Plays MOVE for _attacker in BOARD, which has no square that wins at
+     *  once for either side but perhaps MOVE, and returns true if it is a
+     *  threat that wins with at most DEPTH - 1 more. Squares are collected
+     *  into _stack from TOP up.*/
+    private boolean threat(Board board, int move, int depth, int top) {
+        board.makeMove(move);
+        boolean won;
+        int fours = winningSquares(board, _attacker, _lines.through(move), top);
+        if (fours > 1) {
+            won = true;
+        } else if (fours == 1) {
+            int reply = _stack[top];
+            board.makeMove(reply);
+            won = attack(board, depth - 1, _lines.through(reply), top) >= 0;
+            board.unmakeMove();
+        } else {
+            won = _threes && makesThree(board, move) && defend(board, depth, top);
+        }
+        board.unmakeMove();
+        return won;
+    }
+
+    /** Returns true if _attacker wins with at most DEPTH - 1 more threats
+     *  after every reply _defender, to move in BOARD, has to a three.*/
+    private boolean defend(Board board, int depth, int top) {
+        int end = top + threatSquares(board, _attacker, _lines.k - 2, true, top);
+        for (int n = top; n < end; n += 1) {
+            board.makeMove(_stack[n]);
+            boolean won = attack(board, depth - 1, _lines.through(_stack[n]), end) >= 0;
+            board.unmakeMove();
+            if (!won) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if, after MOVE, _attacker has a move in BOARD making two
+     *  fours at once. Any such move shares a line with MOVE, or it would
+     *  already have been found before MOVE was played.*/
+    private boolean makesThree(Board board, int move) {
+        int k = _lines.k;
+        for (int l : _lines.through(move)) {
+            if (board.lineCount(_attacker, l) == k - 2 && board.lineCount(_defender, l) == 0) {
+                for (int i : _lines.squares(l)) {
+                    if (!board.isOccupied(i) && foursMadeBy(board, i, _attacker) > 1) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Writes into _stack from TOP the distinct empty squares that would
+     *  complete one of LINES for PLAYER in BOARD, and returns how many
+     *  there are.*/
+    private int winningSquares(Board board, Piece player, int[] lines, int top) {
+        Piece other = (player == X) ? O : X;
+        int k = _lines.k;
+        int n = top;
+        _stamp += 1;
+        for (int l : lines) {
+            if (board.lineCount(player, l) == k - 1 && board.lineCount(other, l) == 0) {
+                for (int i : _lines.squares(l)) {
+                    if (!board.isOccupied(i) && _mark[i] != _stamp) {
+                        _mark[i] = _stamp;
+                        _stack[n++] = i;
+                    }
+                }
+            }
+        }
+        return n - top;
+    }
+
+    /** Writes into _stack from TOP the distinct empty squares on lines
+     *  holding at least LEAST of PLAYER's pieces and none of the other
+     *  player's, and returns how many there are. With LEAST = k - 2 these
+     *  are where PLAYER can make a four, and with k - 3 a three. If
+     *  REPLIES, adds the squares on which the other player makes a four,
+     *  giving every reply to a three worth trying.*/
+    private int threatSquares(Board board, Piece player, int least, boolean replies, int top) {
+        Piece other = (player == X) ? O : X;
+        int k = _lines.k;
+        int n = top;
+        _stamp += 1;
+        for (int l = 0; l < _lines.count; l += 1) {
+            int mine = board.lineCount(player, l);
+            int theirs = board.lineCount(other, l);
+            if ((mine >= least && theirs == 0) || (replies && theirs == k - 2 && mine == 0)) {
+                for (int i : _lines.squares(l)) {
+                    if (!board.isOccupied(i) && _mark[i] != _stamp) {
+                        _mark[i] = _stamp;
+                        _stack[n++] = i;
+                    }
+                }
+            }
+        }
+        return n - top;
+    }
+
+    /** Returns how many distinct squares would complete a line for PLAYER
+     *  once PLAYER plays on empty square MOVE, counting only lines through
+     *  MOVE.*/
+    private int foursMadeBy(Board board, int move, Piece player) {
+        Piece other = (player == X) ? O : X;
+        int k = _lines.k;
+        int first = -1;
+        for (int l : _lines.through(move)) {
+            if (board.lineCount(player, l) == k - 2 && board.lineCount(other, l) == 0) {
+                for (int i : _lines.squares(l)) {
+                    if (i != move && !board.isOccupied(i)) {
+                        if (first < 0) {
+                            first = i;
+                        } else if (i != first) {
+                            return 2;
+                        }
+                    }
+                }
+            }
+        }
+        return (first < 0) ? 0 : 1;
+    }
+
+    /** Node limit, most threats in a line, and whether threes are tried.*/
+    private final long _limit;
+    private final int _depth;
+    private final boolean _threes;
+
+    /** Positions visited so far.*/
+    private long _nodes;
+
+    /** Lines of the board being searched, and the numbers of all of them.*/
+    private Lines _lines;
+    private int[] _allLines;
+
+    /** Player looking for a win, and the other one.*/
+    private Piece _attacker, _defender;
+
+    /** Squares collected by each node, each above its parent's.*/
+    private int[] _stack = new int[0];
+
+    /** _mark[i] == _stamp if square i has been collected in the current
+     *  pass, so each square is collected once.*/
+    private int[] _mark = new int[0];
+    private int _stamp;
+}
@@ -0,0 +1,80 @@
+package game;
+
+/** A fixed-size table of search results keyed by canonical Zobrist hash, so
+ *  positions reached by different move orders, or that are rotations and
+ *  reflections of each other, are only searched once.
+ *
+ *  Each entry keeps the score, search depth, bound type and best move of
+ *  one position. Moves are stored in the canonical frame; callers map them
+ *  back with Board.untransform. A new result replaces the one in its slot
+ *  when the slot is empty, holds the same position, was written during an
+ *  earlier search, or was searched no deeper than the new result.
+ *
+ *  A probe returns the whole entry packed into one long, read with the
+ *  static accessors below, so its fields cannot change under the caller
+ *  even when other threads share the table. HeapTable is a plain table for
+ *  one thread; OffHeapTable lives outside the Java heap and may be shared. */
+interface TranspositionTable {
+
+    /** Bound types. The stored score is exact, at least the true value, or at most the true value.*/
+    byte EXACT = 0, LOWER = 1, UPPER = 2;
+
+    /** Marks an entry with no best move.*/
+    int NO_MOVE = -1;
+
+    /** Returned by probe for a position not in the table. No entry packs to it.*/
+    long MISS = 0;
+
+    /** Largest search generation an entry can hold.*/
+    int MAX_AGE = 0x3F;
+
+    /** Starts a new search. Entries from earlier searches become the first
+     *  to be replaced, but can still be probed.*/
+    void newSearch();
+
+    /** Returns the packed entry for KEY, or MISS if it is not in the table.*/
+    long probe(long key);
+
+    /** Records the result of searching position KEY to DEPTH.*/
+    void store(long key, int score, int depth, byte bound, int move);
+
+    /** Empties the table.*/
+    void clear();
+
+    /** Number of slots.*/
+    long capacity();
+
+    /** Returns an entry packing SCORE, DEPTH (capped at 255), BOUND, MOVE
+     *  and AGE, a search generation from 1 to MAX_AGE. Bits 0-31 hold the
+     *  score, 32-39 the depth, 40-41 the bound, 42-47 the age and 48-63 the
+     *  move.*/
+    static long pack(int score, int depth, byte bound, int move, int age) {
+        return (score & 0xFFFFFFFFL) | ((long) Math.min(depth, 0xFF) << 32) | ((long) bound << 40)
+            | ((long) age << 42) | ((long) (move & 0xFFFF) << 48);
+    }
+
+    /** Score in ENTRY.*/
+    static int score(long entry) {
+        return (int) entry;
+    }
+
+    /** Depth the position in ENTRY was searched to.*/
+    static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    /** Bound type of the score in ENTRY.*/
+    static byte bound(long entry) {
+        return (byte) ((entry >>> 40) & 0x3);
+    }
+
+    /** Search generation that wrote ENTRY.*/
+    static int age(long entry) {
+        return (int) (entry >>> 42) & MAX_AGE;
+    }
+
+    /** Best move (a canonical square) in ENTRY, or NO_MOVE.*/
+    static int move(long entry) {
+        return (short) (entry >>> 48);
+    }
+}